@@ -0,0 +1,193 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugins.shade.DefaultShader.RelocatorRemapper;
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link RelocatorRemapper} with what it used to do for every name ASM hands over: match the name against a
+ * descriptor regex, then scan all relocators. Run with <code>-prof gc</code> to see the allocation rates.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class RelocatorRemapperBenchmark
+{
+    /**
+     * Names as they show up in class files: mostly JDK and unrelocated types, some relocated ones.
+     */
+    private static final String[] NAMES =
+        { "java/lang/Object", "java/lang/String", "[Ljava/lang/String;", "Ljava/util/List;", "java/util/Map$Entry",
+            "org/slf4j/Logger", "com/example/app/Main", "com/google/common/collect/ImmutableList",
+            "Lcom/google/common/base/Preconditions;", "org/apache/commons/lang3/StringUtils",
+            "com.fasterxml.jackson.databind.ObjectMapper", "io/netty/buffer/ByteBuf", "META-INF/MANIFEST.MF",
+            "org/apache/maven/plugins/shade/Lib", "javax/annotation/Nullable", "net/bytebuddy/ByteBuddy" };
+
+    private static final String[] PACKAGES =
+        { "com.google.common", "com.fasterxml.jackson", "io.netty", "org.apache.commons.lang3", "net.bytebuddy",
+            "org.objectweb.asm", "org.yaml.snakeyaml", "org.joda.time", "okhttp3", "okio", "kotlin", "org.jboss",
+            "org.apache.http", "org.apache.commons.io", "org.apache.commons.codec", "com.squareup", "org.bouncycastle",
+            "org.hibernate", "org.eclipse.jetty", "javax.inject" };
+
+    @Param( { "1", "10", "60" } )
+    public int relocations;
+
+    private List<Relocator> relocators;
+
+    private RelocatorRemapper remapper;
+
+    private final Pattern classPattern = Pattern.compile( "(\\[*)?L(.+);" );
+
+    @Setup
+    public void setUp()
+    {
+        relocators = new ArrayList<Relocator>();
+        for ( int i = 0; i < relocations; i++ )
+        {
+            String pattern = PACKAGES[i % PACKAGES.length] + ( i < PACKAGES.length ? "" : ".v" + i );
+            relocators.add( new SimpleRelocator( pattern, "shaded." + pattern, null, null ) );
+        }
+        remapper = new RelocatorRemapper( relocators );
+    }
+
+    @Benchmark
+    public void linearScan( Blackhole blackhole )
+    {
+        for ( String name : NAMES )
+        {
+            blackhole.consume( linearMap( name ) );
+        }
+    }
+
+    @Benchmark
+    public void remapper( Blackhole blackhole )
+    {
+        for ( String name : NAMES )
+        {
+            blackhole.consume( remapper.map( name ) );
+        }
+    }
+
+    @Benchmark
+    public void linearScanValue( Blackhole blackhole )
+    {
+        for ( String name : NAMES )
+        {
+            blackhole.consume( linearMapValue( name ) );
+        }
+    }
+
+    @Benchmark
+    public void remapperValue( Blackhole blackhole )
+    {
+        for ( String name : NAMES )
+        {
+            blackhole.consume( remapper.mapValue( name ) );
+        }
+    }
+
+    /**
+     * The former {@link RelocatorRemapper#map(String)}.
+     */
+    private String linearMap( String name )
+    {
+        String value = name;
+
+        String prefix = "";
+        String suffix = "";
+
+        Matcher m = classPattern.matcher( name );
+        if ( m.matches() )
+        {
+            prefix = m.group( 1 ) + "L";
+            suffix = ";";
+            name = m.group( 2 );
+        }
+
+        for ( Relocator r : relocators )
+        {
+            if ( r.canRelocatePath( name ) )
+            {
+                value = prefix + r.relocatePath( name ) + suffix;
+                break;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * The former {@link RelocatorRemapper#mapValue(Object)}.
+     */
+    private Object linearMapValue( String name )
+    {
+        String value = name;
+
+        String prefix = "";
+        String suffix = "";
+
+        Matcher m = classPattern.matcher( name );
+        if ( m.matches() )
+        {
+            prefix = m.group( 1 ) + "L";
+            suffix = ";";
+            name = m.group( 2 );
+        }
+
+        for ( Relocator r : relocators )
+        {
+            if ( r.canRelocateClass( name ) )
+            {
+                value = prefix + r.relocateClass( name ) + suffix;
+                break;
+            }
+            else if ( r.canRelocatePath( name ) )
+            {
+                value = prefix + r.relocatePath( name ) + suffix;
+                break;
+            }
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,137 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugins.shade.filter.Filter;
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
+import org.apache.maven.plugins.shade.resource.ComponentsXmlResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ServicesResourceTransformer;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Shades synthetic jars end to end with {@link DefaultShader}, from reading the input jars to writing the shaded jar.
+ * The relocation cache is not used, so every iteration relocates all classes.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ShadeBenchmark
+{
+    @Param( { "10" } )
+    public int jars;
+
+    @Param( { "500", "5000" } )
+    public int classesPerJar;
+
+    @Param( { "1", "4" } )
+    public int threads;
+
+    @Param( { "true", "false" } )
+    public boolean relocate;
+
+    private File directory;
+
+    private DefaultShader shader;
+
+    private ShadeRequest request;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        directory = File.createTempFile( "shade-benchmark", "" );
+        // noinspection ResultOfMethodCallIgnored
+        directory.delete();
+
+        Set<File> inputs = new LinkedHashSet<File>();
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        for ( int i = 0; i < jars; i++ )
+        {
+            // each library uses the next one
+            String referenced = i + 1 < jars ? "org/example/lib" + ( i + 1 ) : null;
+            inputs.add( SyntheticJars.createJar( new File( directory, "lib" + i + ".jar" ), "org/example/lib" + i,
+                                                 classesPerJar, referenced, classesPerJar ) );
+            // every other library is relocated
+            if ( relocate && i % 2 == 1 )
+            {
+                relocators.add( new SimpleRelocator( "org.example.lib" + i, "shaded.org.example.lib" + i, null,
+                                                     null ) );
+            }
+        }
+
+        request = new ShadeRequest();
+        request.setJars( inputs );
+        request.setUberJar( new File( directory, "shaded.jar" ) );
+        request.setFilters( new ArrayList<Filter>() );
+        request.setRelocators( relocators );
+        request.setThreads( threads );
+
+        shader = new DefaultShader();
+        shader.enableLogging( new ConsoleLogger( Logger.LEVEL_ERROR, "benchmark" ) );
+    }
+
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    @Benchmark
+    public long shade()
+        throws Exception
+    {
+        // transformers keep what they collected, so they have to be new for every run
+        List<ResourceTransformer> transformers = new ArrayList<ResourceTransformer>();
+        transformers.add( new ServicesResourceTransformer() );
+        transformers.add( new ComponentsXmlResourceTransformer() );
+        request.setResourceTransformers( transformers );
+
+        shader.shade( request );
+        return request.getUberJar().length();
+    }
+}
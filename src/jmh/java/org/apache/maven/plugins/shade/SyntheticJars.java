@@ -0,0 +1,157 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generates jars looking like real libraries for the benchmarks: classes spread over a few packages, each one
+ * referring to another class of the same jar and optionally to a class of another jar, together with the resources
+ * the resource transformers deal with.
+ */
+public final class SyntheticJars
+{
+    private static final int CLASSES_PER_PACKAGE = 50;
+
+    private SyntheticJars()
+    {
+    }
+
+    /**
+     * @param basePackage the package of the classes, such as <code>org/example/lib0</code>.
+     * @param index the index of a class.
+     * @return the internal name of the class.
+     */
+    public static String className( String basePackage, int index )
+    {
+        return basePackage + "/p" + ( index / CLASSES_PER_PACKAGE ) + "/Class" + index;
+    }
+
+    /**
+     * Writes a jar.
+     *
+     * @param file the jar to write.
+     * @param basePackage the package of the classes, such as <code>org/example/lib0</code>.
+     * @param classes the number of classes.
+     * @param referencedPackage the package of the classes of another jar to refer to, or <code>null</code>.
+     * @param referencedClasses the number of classes in the other jar; only every other one is referred to.
+     * @return the jar.
+     */
+    public static File createJar( File file, String basePackage, int classes, String referencedPackage,
+                                  int referencedClasses )
+        throws IOException
+    {
+        // noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        JarOutputStream jos = new JarOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            add( jos, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\nCreated-By: benchmark\n" );
+            add( jos, "META-INF/NOTICE", "This product includes software developed by " + basePackage + ".\n" );
+            add( jos, "META-INF/LICENSE", "Apache License, Version 2.0\n" );
+            add( jos, "META-INF/services/" + basePackage.replace( '/', '.' ) + ".Service",
+                 className( basePackage, 0 ).replace( '/', '.' ) + "\n" );
+            add( jos, "META-INF/plexus/components.xml",
+                 "<component-set><components><component><role>" + className( basePackage, 0 ).replace( '/', '.' )
+                     + "</role><implementation>" + className( basePackage, 1 ).replace( '/', '.' )
+                     + "</implementation></component></components></component-set>\n" );
+
+            Set<String> directories = new HashSet<String>();
+            for ( int i = 0; i < classes; i++ )
+            {
+                String name = className( basePackage, i );
+                String directory = name.substring( 0, name.lastIndexOf( '/' ) + 1 );
+                if ( directories.add( directory ) )
+                {
+                    jos.putNextEntry( new JarEntry( directory ) );
+                    add( jos, directory + "messages.properties", "name=" + directory + "\n" );
+                }
+
+                String referenced = referencedPackage != null && i % 2 == 0 && referencedClasses > 0
+                                ? className( referencedPackage, i % referencedClasses ) : null;
+                jos.putNextEntry( new JarEntry( name + ".class" ) );
+                jos.write( createClass( name, className( basePackage, ( i + 1 ) % classes ), referenced ) );
+            }
+        }
+        finally
+        {
+            IOUtil.close( jos );
+        }
+        return file;
+    }
+
+    private static void add( JarOutputStream jos, String name, String content )
+        throws IOException
+    {
+        jos.putNextEntry( new JarEntry( name ) );
+        jos.write( content.getBytes( "UTF-8" ) );
+    }
+
+    /**
+     * @return a class with a field of the next class, and a method calling the referenced class and naming itself.
+     */
+    private static byte[] createClass( String name, String next, String referenced )
+    {
+        ClassWriter cw = new ClassWriter( ClassWriter.COMPUTE_MAXS );
+        cw.visit( Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null );
+        cw.visitSource( name.substring( name.lastIndexOf( '/' ) + 1 ) + ".java", null );
+        cw.visitField( Opcodes.ACC_PRIVATE, "next", "L" + next + ";", null, null ).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod( Opcodes.ACC_PUBLIC, "<init>", "()V", null, null );
+        mv.visitCode();
+        mv.visitVarInsn( Opcodes.ALOAD, 0 );
+        mv.visitMethodInsn( Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false );
+        mv.visitInsn( Opcodes.RETURN );
+        mv.visitMaxs( 0, 0 );
+        mv.visitEnd();
+
+        mv = cw.visitMethod( Opcodes.ACC_PUBLIC, "run", "()Ljava/lang/String;", null, null );
+        mv.visitCode();
+        if ( referenced != null )
+        {
+            mv.visitTypeInsn( Opcodes.NEW, referenced );
+            mv.visitInsn( Opcodes.DUP );
+            mv.visitMethodInsn( Opcodes.INVOKESPECIAL, referenced, "<init>", "()V", false );
+            mv.visitMethodInsn( Opcodes.INVOKEVIRTUAL, referenced, "run", "()Ljava/lang/String;", false );
+            mv.visitInsn( Opcodes.POP );
+        }
+        mv.visitVarInsn( Opcodes.ALOAD, 0 );
+        mv.visitFieldInsn( Opcodes.GETFIELD, name, "next", "L" + next + ";" );
+        mv.visitInsn( Opcodes.POP );
+        mv.visitLdcInsn( name.replace( '/', '.' ) );
+        mv.visitInsn( Opcodes.ARETURN );
+        mv.visitMaxs( 0, 0 );
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
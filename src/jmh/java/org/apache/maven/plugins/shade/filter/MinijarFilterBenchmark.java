@@ -0,0 +1,156 @@
+package org.apache.maven.plugins.shade.filter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.shade.SyntheticJars;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Builds a {@link MinijarFilter} for a project whose classes use a chain of synthetic libraries, of which only some
+ * classes are reachable, and asks it about every class of the libraries. With the cache, only the first run reads
+ * the classes of the jars.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class MinijarFilterBenchmark
+{
+    @Param( { "10" } )
+    public int jars;
+
+    @Param( { "500", "5000" } )
+    public int classesPerJar;
+
+    @Param( { "1", "4" } )
+    public int threads;
+
+    @Param( { "false", "true" } )
+    public boolean cache;
+
+    private File directory;
+
+    private MavenProject project;
+
+    private Log log;
+
+    private MinijarFilter filter;
+
+    private List<String> classFiles;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        directory = File.createTempFile( "minijar-benchmark", "" );
+        // noinspection ResultOfMethodCallIgnored
+        directory.delete();
+
+        project = new MavenProject();
+        project.setArtifact( artifact( "app", SyntheticJars.createJar( new File( directory, "app.jar" ),
+                                                                        "org/example/app", classesPerJar / 10,
+                                                                        "org/example/lib0", classesPerJar ) ) );
+        Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+        classFiles = new ArrayList<String>();
+        for ( int i = 0; i < jars; i++ )
+        {
+            // each library uses half of the next one, the last one is not used at all
+            String referenced = i + 2 < jars ? "org/example/lib" + ( i + 1 ) : null;
+            artifacts.add( artifact( "lib" + i,
+                                     SyntheticJars.createJar( new File( directory, "lib" + i + ".jar" ),
+                                                              "org/example/lib" + i, classesPerJar, referenced,
+                                                              classesPerJar ) ) );
+            for ( int j = 0; j < classesPerJar; j++ )
+            {
+                classFiles.add( SyntheticJars.className( "org/example/lib" + i, j ) + ".class" );
+            }
+        }
+        project.setArtifacts( artifacts );
+
+        log = new DefaultLog( new ConsoleLogger( Logger.LEVEL_ERROR, "benchmark" ) );
+        filter = new MinijarFilter( project, log );
+    }
+
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+    private static Artifact artifact( String artifactId, File file )
+    {
+        Artifact artifact = new DefaultArtifact( "org.example", artifactId, "1.0", Artifact.SCOPE_COMPILE, "jar", null,
+                                                 new DefaultArtifactHandler( "jar" ) );
+        artifact.setFile( file );
+        return artifact;
+    }
+
+    @Benchmark
+    public MinijarFilter construct()
+        throws IOException
+    {
+        MinijarOptions options = new MinijarOptions();
+        options.setThreads( threads );
+        options.setCacheDirectory( cache ? new File( directory, "cache" ) : null );
+        return new MinijarFilter( project, log, null, options );
+    }
+
+    @Benchmark
+    public void isFiltered( Blackhole blackhole )
+    {
+        for ( String classFile : classFiles )
+        {
+            blackhole.consume( filter.isFiltered( classFile ) );
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.apache.maven.plugins.shade.filter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugins.shade.SyntheticJars;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link SimpleFilter#isFiltered(String)} over the entries of a jar, with a growing number of include and exclude
+ * patterns.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class SimpleFilterBenchmark
+{
+    private static final int ENTRIES = 1000;
+
+    @Param( { "1", "10", "50" } )
+    public int patterns;
+
+    private String[] entries;
+
+    private SimpleFilter filter;
+
+    @Setup
+    public void setUp()
+    {
+        entries = new String[ENTRIES];
+        for ( int i = 0; i < ENTRIES; i++ )
+        {
+            entries[i] = SyntheticJars.className( "org/example/lib", i ) + ".class";
+        }
+
+        Set<String> includes = new HashSet<String>();
+        Set<String> excludes = new HashSet<String>();
+        for ( int i = 0; i < patterns; i++ )
+        {
+            includes.add( "org/example/lib/p" + i + "/**" );
+            excludes.add( "org/example/lib/p" + i + "/Class" + i + "*" );
+        }
+        excludes.add( "META-INF/*.SF" );
+        filter = new SimpleFilter( Collections.<File>emptySet(), includes, excludes );
+    }
+
+    @Benchmark
+    public void isFiltered( Blackhole blackhole )
+    {
+        for ( String entry : entries )
+        {
+            blackhole.consume( filter.isFiltered( entry ) );
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.apache.maven.plugins.shade.relocation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link SimpleRelocator#canRelocatePath(String)} and {@link SimpleRelocator#relocatePath(String)} on the kind of names
+ * found in class files, with and without include and exclude patterns.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class SimpleRelocatorBenchmark
+{
+    private static final String[] PATHS =
+        { "java/lang/Object", "com/google/common/collect/ImmutableList", "com/google/common/base/Preconditions",
+            "com/google/common/collect/internal/Hashing", "com/google/common/annotations/Beta",
+            "com/google/commonality/Other", "org/slf4j/Logger", "com/google/common/cache/LocalCache$Segment",
+            "META-INF/services/com.google.common.Service", "com/example/app/Main" };
+
+    @Param( { "false", "true" } )
+    public boolean includesExcludes;
+
+    private SimpleRelocator relocator;
+
+    @Setup
+    public void setUp()
+    {
+        List<String> includes = null;
+        List<String> excludes = null;
+        if ( includesExcludes )
+        {
+            includes = Arrays.asList( "com.google.common.collect.*", "com.google.common.base.*",
+                                      "com.google.common.cache.**" );
+            excludes = Arrays.asList( "com.google.common.collect.internal.*", "com.google.common.annotations.*" );
+        }
+        relocator = new SimpleRelocator( "com.google.common", "shaded.com.google.common", includes, excludes );
+    }
+
+    @Benchmark
+    public void canRelocatePath( Blackhole blackhole )
+    {
+        for ( String path : PATHS )
+        {
+            blackhole.consume( relocator.canRelocatePath( path ) );
+        }
+    }
+
+    @Benchmark
+    public void relocatePath( Blackhole blackhole )
+    {
+        for ( String path : PATHS )
+        {
+            if ( relocator.canRelocatePath( path ) )
+            {
+                blackhole.consume( relocator.relocatePath( path ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package org.apache.maven.plugins.shade.resource;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs each {@link ResourceTransformer} as the shader does: asks it about every resource, hands it the ones it can
+ * transform, then lets it write its output. Every resource is one the transformer handles, one per input jar.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class ResourceTransformerBenchmark
+{
+    @Param( { "ApacheLicense", "ApacheNotice", "Appending", "ComponentsXml", "DontInclude", "Include", "Manifest",
+        "PluginXml", "Services", "XmlAppending" } )
+    public String transformer;
+
+    @Param( { "100" } )
+    public int resources;
+
+    private final List<Relocator> relocators = Collections.<Relocator>singletonList(
+        new SimpleRelocator( "org.example", "shaded.org.example", null, null ) );
+
+    private String[] names;
+
+    private byte[][] contents;
+
+    private File includedFile;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        includedFile = File.createTempFile( "include", ".txt" );
+        FileUtils.fileWrite( includedFile.getPath(), "UTF-8", "included\n" );
+
+        names = new String[resources];
+        contents = new byte[resources][];
+        for ( int i = 0; i < resources; i++ )
+        {
+            String type = "org.example.lib" + i + ".Type";
+            String content;
+            if ( "ApacheLicense".equals( transformer ) )
+            {
+                names[i] = "META-INF/LICENSE";
+                content = "Apache License, Version 2.0\n";
+            }
+            else if ( "ApacheNotice".equals( transformer ) )
+            {
+                names[i] = "META-INF/NOTICE";
+                content = "Library " + i + "\nCopyright 2001-2016 The Apache Software Foundation\n\n"
+                    + "This product includes software developed at\nThe Apache Software Foundation\n";
+            }
+            else if ( "ComponentsXml".equals( transformer ) )
+            {
+                names[i] = "META-INF/plexus/components.xml";
+                content = "<component-set><components><component><role>" + type + "</role><implementation>" + type
+                    + "Impl</implementation><requirements><requirement><role>" + type
+                    + "Dependency</role></requirement></requirements></component></components></component-set>";
+            }
+            else if ( "Manifest".equals( transformer ) )
+            {
+                names[i] = "META-INF/MANIFEST.MF";
+                content = "Manifest-Version: 1.0\nMain-Class: " + type + "\n";
+            }
+            else if ( "PluginXml".equals( transformer ) )
+            {
+                names[i] = "META-INF/maven/plugin.xml";
+                content = "<plugin><mojos><mojo><goal>goal" + i + "</goal><implementation>" + type
+                    + "</implementation><parameters><parameter><name>p</name><type>" + type
+                    + "</type></parameter></parameters></mojo></mojos></plugin>";
+            }
+            else if ( "Services".equals( transformer ) )
+            {
+                names[i] = "META-INF/services/org.example.Service" + ( i % 10 );
+                content = type + "\n" + type + "Other\n";
+            }
+            else if ( "XmlAppending".equals( transformer ) )
+            {
+                names[i] = "META-INF/aop.xml";
+                content = "<aspectj><aspects><aspect name=\"" + type + "\"/></aspects></aspectj>";
+            }
+            else
+            {
+                names[i] = "META-INF/spring.handlers";
+                content = "http\\://www.example.org/schema/lib" + i + "=" + type + "\n";
+            }
+            contents[i] = content.getBytes( "UTF-8" );
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        // noinspection ResultOfMethodCallIgnored
+        includedFile.delete();
+    }
+
+    private ResourceTransformer newTransformer()
+    {
+        if ( "ApacheLicense".equals( transformer ) )
+        {
+            return new ApacheLicenseResourceTransformer();
+        }
+        if ( "ApacheNotice".equals( transformer ) )
+        {
+            return new ApacheNoticeResourceTransformer();
+        }
+        if ( "Appending".equals( transformer ) )
+        {
+            AppendingTransformer appending = new AppendingTransformer();
+            appending.resource = "META-INF/spring.handlers";
+            return appending;
+        }
+        if ( "ComponentsXml".equals( transformer ) )
+        {
+            return new ComponentsXmlResourceTransformer();
+        }
+        if ( "DontInclude".equals( transformer ) )
+        {
+            DontIncludeResourceTransformer dontInclude = new DontIncludeResourceTransformer();
+            dontInclude.resource = ".handlers";
+            return dontInclude;
+        }
+        if ( "Include".equals( transformer ) )
+        {
+            IncludeResourceTransformer include = new IncludeResourceTransformer();
+            include.file = includedFile;
+            include.resource = "META-INF/included.txt";
+            return include;
+        }
+        if ( "Manifest".equals( transformer ) )
+        {
+            return new ManifestResourceTransformer();
+        }
+        if ( "PluginXml".equals( transformer ) )
+        {
+            return new PluginXmlResourceTransformer();
+        }
+        if ( "Services".equals( transformer ) )
+        {
+            return new ServicesResourceTransformer();
+        }
+        if ( "XmlAppending".equals( transformer ) )
+        {
+            XmlAppendingTransformer xmlAppending = new XmlAppendingTransformer();
+            xmlAppending.resource = "META-INF/aop.xml";
+            return xmlAppending;
+        }
+        throw new IllegalArgumentException( "Unknown transformer " + transformer );
+    }
+
+    @Benchmark
+    public ResourceTransformer transform()
+        throws IOException
+    {
+        ResourceTransformer resourceTransformer = newTransformer();
+        for ( int i = 0; i < resources; i++ )
+        {
+            if ( resourceTransformer.canTransformResource( names[i] ) )
+            {
+                resourceTransformer.processResource( names[i], new ByteArrayInputStream( contents[i] ), relocators );
+            }
+        }
+        if ( resourceTransformer.hasTransformedResource() )
+        {
+            JarOutputStream jos = new JarOutputStream( new NullOutputStream() );
+            resourceTransformer.modifyOutputStream( jos );
+            jos.close();
+        }
+        return resourceTransformer;
+    }
+}
@@ -0,0 +1,52 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * The versions of the code which rewrites classes, so that what was cached by another version of the plugin or of
+ * ASM is not used: a fix in the way classes are rewritten changes the result for the same input.
+ *
+ * @since 2.4.5
+ */
+public final class CodeVersion
+{
+    private CodeVersion()
+    {
+    }
+
+    /**
+     * @return the version of the plugin and that of ASM, as found in the manifests of their jars, such as
+     *         <code>shade 2.4.5, asm 5.0.2</code>. A version which cannot be found, as when the classes are not loaded
+     *         from a jar, is <code>unknown</code>.
+     */
+    public static String get()
+    {
+        return "shade " + getVersion( CodeVersion.class ) + ", asm " + getVersion( ClassReader.class );
+    }
+
+    private static String getVersion( Class<?> type )
+    {
+        Package pkg = type.getPackage();
+        String version = pkg != null ? pkg.getImplementationVersion() : null;
+        return version != null ? version : "unknown";
+    }
+}
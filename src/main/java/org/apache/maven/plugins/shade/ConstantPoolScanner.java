@@ -0,0 +1,174 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Looks for byte sequences in the UTF8 entries of a class file's constant pool without parsing the rest of the class.
+ * Every name, descriptor, signature and string constant of a class lives in such an entry, so a class whose pool does
+ * not contain any of the sequences cannot be affected by a remapping keyed on them.
+ */
+final class ConstantPoolScanner
+{
+    // CHECKSTYLE_OFF: MagicNumber
+    private static final int UTF8 = 1;
+
+    private static final int INTEGER = 3;
+
+    private static final int FLOAT = 4;
+
+    private static final int LONG = 5;
+
+    private static final int DOUBLE = 6;
+
+    private static final int CLASS = 7;
+
+    private static final int STRING = 8;
+
+    private static final int FIELDREF = 9;
+
+    private static final int METHODREF = 10;
+
+    private static final int INTERFACE_METHODREF = 11;
+
+    private static final int NAME_AND_TYPE = 12;
+
+    private static final int METHOD_HANDLE = 15;
+
+    private static final int METHOD_TYPE = 16;
+
+    private static final int DYNAMIC = 17;
+
+    private static final int INVOKE_DYNAMIC = 18;
+
+    private static final int MODULE = 19;
+
+    private static final int PACKAGE = 20;
+
+    private static final int CONSTANT_POOL_OFFSET = 10;
+    // CHECKSTYLE_ON: MagicNumber
+
+    private ConstantPoolScanner()
+    {
+        // no op
+    }
+
+    /**
+     * @param classFile the bytes of a class file.
+     * @param needles the byte sequences to look for.
+     * @return <code>true</code> if a UTF8 entry contains one of the needles, or if the class file could not be
+     *         scanned; <code>false</code> only if none of the needles occurs in the constant pool.
+     */
+    static boolean containsAny( byte[] classFile, byte[][] needles )
+    {
+        if ( classFile.length < CONSTANT_POOL_OFFSET )
+        {
+            return true;
+        }
+
+        int count = readUnsignedShort( classFile, CONSTANT_POOL_OFFSET - 2 );
+        int offset = CONSTANT_POOL_OFFSET;
+
+        // CHECKSTYLE_OFF: MagicNumber
+        for ( int i = 1; i < count; i++ )
+        {
+            if ( offset >= classFile.length )
+            {
+                return true;
+            }
+
+            switch ( classFile[offset] )
+            {
+                case UTF8:
+                    if ( offset + 3 > classFile.length )
+                    {
+                        return true;
+                    }
+                    int length = readUnsignedShort( classFile, offset + 1 );
+                    int start = offset + 3;
+                    if ( start + length > classFile.length || contains( classFile, start, length, needles ) )
+                    {
+                        return true;
+                    }
+                    offset = start + length;
+                    break;
+                case CLASS:
+                case STRING:
+                case METHOD_TYPE:
+                case MODULE:
+                case PACKAGE:
+                    offset += 3;
+                    break;
+                case METHOD_HANDLE:
+                    offset += 4;
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case FIELDREF:
+                case METHODREF:
+                case INTERFACE_METHODREF:
+                case NAME_AND_TYPE:
+                case DYNAMIC:
+                case INVOKE_DYNAMIC:
+                    offset += 5;
+                    break;
+                case LONG:
+                case DOUBLE:
+                    offset += 9;
+                    // takes two slots
+                    i++;
+                    break;
+                default:
+                    // not a class file we understand, let ASM deal with it
+                    return true;
+            }
+        }
+        // CHECKSTYLE_ON: MagicNumber
+
+        return false;
+    }
+
+    private static boolean contains( byte[] bytes, int start, int length, byte[][] needles )
+    {
+        for ( byte[] needle : needles )
+        {
+            int last = start + length - needle.length;
+            for ( int i = start; i <= last; i++ )
+            {
+                int j = 0;
+                while ( j < needle.length && bytes[i + j] == needle[j] )
+                {
+                    j++;
+                }
+                if ( j == needle.length )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int readUnsignedShort( byte[] bytes, int offset )
+    {
+        // CHECKSTYLE_OFF: MagicNumber
+        return ( ( bytes[offset] & 0xFF ) << 8 ) | ( bytes[offset + 1] & 0xFF );
+        // CHECKSTYLE_ON: MagicNumber
+    }
+}
@@ -20,12 +20,14 @@ package org.apache.maven.plugins.shade;
  */
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.io.IOUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.shade.filter.Filter;
+import org.apache.maven.plugins.shade.filter.MemberFilter;
 import org.apache.maven.plugins.shade.relocation.Relocator;
 import org.apache.maven.plugins.shade.resource.ManifestResourceTransformer;
 import org.apache.maven.plugins.shade.resource.ResourceTransformer;
@@ -45,7 +47,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -55,11 +56,17 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 
 /**
@@ -96,24 +103,59 @@ public class DefaultShader
 
         RelocatorRemapper remapper = new RelocatorRemapper( shadeRequest.getRelocators() );
 
+        RelocatedClassCache cache = null;
+        if ( shadeRequest.getRelocationCacheDirectory() != null && remapper.hasRelocators() )
+        {
+            cache = RelocatedClassCache.create( shadeRequest.getRelocationCacheDirectory(),
+                                                shadeRequest.getRelocators(), getLogger() );
+        }
+
+        int threads = shadeRequest.getThreads() > 0 ? shadeRequest.getThreads()
+                        : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = null;
+        if ( threads > 1 )
+        {
+            getLogger().debug( "Relocating and compressing entries using " + threads + " threads" );
+            executor = Executors.newFixedThreadPool( threads );
+        }
+
         // noinspection ResultOfMethodCallIgnored
         shadeRequest.getUberJar().getParentFile().mkdirs();
         FileOutputStream fileOutputStream = new FileOutputStream( shadeRequest.getUberJar() );
-        JarOutputStream jos = new JarOutputStream( new BufferedOutputStream( fileOutputStream ) );
+        ShadedJarOutputStream jos = new ShadedJarOutputStream( new BufferedOutputStream( fileOutputStream ) );
+        jos.setLevel( shadeRequest.getCompressionLevel() );
+        if ( shadeRequest.getOutputTimestamp() != null )
+        {
+            jos.setEntryTime( shadeRequest.getOutputTimestamp().getTime() );
+        }
+        if ( shadeRequest.isUncompressed() )
+        {
+            jos.setMethod( ZipEntry.STORED );
+        }
+        // CHECKSTYLE_OFF: MagicNumber
+        ShadedJarWriter writer = new ShadedJarWriter( jos, executor, threads * 64, getLogger() );
+        // CHECKSTYLE_ON: MagicNumber
+        ShadeMetrics metrics = new ShadeMetrics( shadeRequest.getUberJar(), threads );
 
         try
         {
 
+            long start = System.nanoTime();
             goThroughAllJarEntriesForManifestTransformer( shadeRequest, resources, manifestTransformer, jos );
+            metrics.getTotal().time( ShadeMetrics.TRANSFORM, start );
 
             // CHECKSTYLE_OFF: MagicNumber
-            Multimap<String, File> duplicates = HashMultimap.create( 10000, 3 );
+            Multimap<String, File> duplicates = LinkedHashMultimap.create( 10000, 3 );
             // CHECKSTYLE_ON: MagicNumber
 
-            shadeJars( shadeRequest, resources, transformers, remapper, jos, duplicates );
+            shadeJars( shadeRequest, resources, transformers, remapper, cache, writer, duplicates, metrics );
+            if ( cache != null )
+            {
+                cache.evict();
+            }
 
             // CHECKSTYLE_OFF: MagicNumber
-            Multimap<Collection<File>, String> overlapping = HashMultimap.create( 20, 15 );
+            Multimap<Collection<File>, String> overlapping = LinkedHashMultimap.create( 20, 15 );
             // CHECKSTYLE_ON: MagicNumber
 
             for ( String clazz : duplicates.keySet() )
@@ -133,6 +175,7 @@ public class DefaultShader
                 showOverlappingWarning();
             }
 
+            start = System.nanoTime();
             for ( ResourceTransformer transformer : transformers )
             {
                 if ( transformer.hasTransformedResource() )
@@ -140,21 +183,45 @@ public class DefaultShader
                     transformer.modifyOutputStream( jos );
                 }
             }
+            metrics.getTotal().time( ShadeMetrics.TRANSFORM, start );
 
         }
         finally
         {
+            writer.cancel();
+            if ( executor != null )
+            {
+                executor.shutdownNow();
+            }
             IOUtil.close( jos );
         }
+        metrics.finished();
 
         for ( Filter filter : shadeRequest.getFilters() )
         {
             filter.finished();
         }
+
+        if ( remapper.hasRelocators() )
+        {
+            getLogger().debug( "Relocated names: " + remapper.getCacheHits() + " cache hits, "
+                                   + remapper.getCacheMisses() + " cache misses" );
+        }
+
+        if ( shadeRequest.getMetricsReport() != null )
+        {
+            metrics.log( getLogger(), true );
+            metrics.writeReport( shadeRequest.getMetricsReport() );
+        }
+        else if ( getLogger().isDebugEnabled() )
+        {
+            metrics.log( getLogger(), false );
+        }
     }
 
     private void shadeJars( ShadeRequest shadeRequest, Set<String> resources, List<ResourceTransformer> transformers,
-                            RelocatorRemapper remapper, JarOutputStream jos, Multimap<String, File> duplicates )
+                            RelocatorRemapper remapper, RelocatedClassCache cache, ShadedJarWriter writer,
+                            Multimap<String, File> duplicates, ShadeMetrics metrics )
         throws IOException, MojoExecutionException
     {
         List<String> shadedIn = new LinkedList<String>();
@@ -164,17 +231,25 @@ public class DefaultShader
             getLogger().debug( "Processing JAR " + jar );
 
             List<Filter> jarFilters = getFilters( jar, shadeRequest.getFilters() );
+            List<MemberFilter> memberFilters = getMemberFilters( jarFilters );
+
+            ShadeMetrics.Jar jarMetrics = metrics.addJar( jar );
+            writer.setMetrics( jarMetrics );
 
-            JarFile jarFile = newJarFile( jar );
+            long start = System.nanoTime();
+            InputJar inputJar = newInputJar( jar );
 
             try
             {
 
-                for ( Enumeration<JarEntry> j = jarFile.entries(); j.hasMoreElements(); )
+                RelocatedClassCache.CachedJar cachedJar = cache != null ? cache.open( jar ) : null;
+                jarMetrics.time( ShadeMetrics.READ, start );
+
+                for ( ZipArchiveEntry entry : inputJar.getEntries() )
                 {
-                    JarEntry entry = j.nextElement();
 
                     String name = entry.getName();
+                    jarMetrics.entry();
 
                     if ( "META-INF/INDEX.LIST".equals( name ) )
                     {
@@ -189,7 +264,7 @@ public class DefaultShader
                         // meaning that the jar was built using this plugin (or one that does the same thing)
                         // we read the dependencies from here and include them in our list
                         // (stuff shaded in a jar we shade in => we have shaded in the original stuff)
-                        InputStream depFile = jarFile.getInputStream( entry );
+                        InputStream depFile = inputJar.getInputStream( entry );
                         try
                         {
                             getLogger().debug( "Found nested shading in " + name + ", adding to overall list..." );
@@ -209,22 +284,37 @@ public class DefaultShader
                     } 
                     
 
-                    if ( !entry.isDirectory() && !isFiltered( jarFilters, name ) && !SHADED_DEPS_PATH.equals( name ) )
+                    if ( entry.isDirectory() || SHADED_DEPS_PATH.equals( name ) )
                     {
-                        shadeSingleJar( shadeRequest, resources, transformers, remapper, jos, duplicates, jar, jarFile,
-                                        entry, name );
+                        continue;
                     }
+
+                    start = System.nanoTime();
+                    boolean filtered = isFiltered( jarFilters, name );
+                    jarMetrics.time( ShadeMetrics.FILTER, start );
+                    if ( !filtered )
+                    {
+                        shadeSingleJar( shadeRequest, resources, transformers, remapper, cachedJar, memberFilters,
+                                        writer, duplicates, jar, inputJar, entry, name, jarMetrics );
+                    }
+                }
+
+                if ( cachedJar != null )
+                {
+                    cachedJar.close();
                 }
 
             }
             finally
             {
-                jarFile.close();
+                inputJar.close();
             }
         }
+        writer.flush();
+        writer.setMetrics( null );
         if ( shadeRequest.shouldListShadedInJar() )
         {
-            addDepListEntry( jos, shadedIn, shadeRequest );
+            addDepListEntry( writer.getJarOutputStream(), shadedIn, shadeRequest );
         }
     }
 
@@ -263,61 +353,63 @@ public class DefaultShader
 
     private void shadeSingleJar( ShadeRequest shadeRequest, Set<String> resources,
                                  List<ResourceTransformer> transformers, RelocatorRemapper remapper,
-                                 JarOutputStream jos, Multimap<String, File> duplicates, File jar, JarFile jarFile,
-                                 JarEntry entry, String name )
+                                 RelocatedClassCache.CachedJar cachedJar, List<MemberFilter> memberFilters,
+                                 ShadedJarWriter writer, Multimap<String, File> duplicates, File jar,
+                                 InputJar inputJar, ZipArchiveEntry entry, String name, ShadeMetrics.Jar metrics )
         throws IOException, MojoExecutionException
     {
-        InputStream is = jarFile.getInputStream( entry );
+        String mappedName = remapper.map( name );
 
-        try
+        int idx = mappedName.lastIndexOf( '/' );
+        if ( idx != -1 )
         {
-
-            String mappedName = remapper.map( name );
-
-            int idx = mappedName.lastIndexOf( '/' );
-            if ( idx != -1 )
+            // make sure dirs are created
+            String dir = mappedName.substring( 0, idx );
+            if ( !resources.contains( dir ) )
             {
-                // make sure dirs are created
-                String dir = mappedName.substring( 0, idx );
-                if ( !resources.contains( dir ) )
-                {
-                    addDirectory( resources, jos, dir );
-                }
+                addDirectory( resources, writer, dir );
             }
+        }
 
-            if ( name.endsWith( ".class" ) )
+        if ( name.endsWith( ".class" ) )
+        {
+            duplicates.put( name, jar );
+            if ( hasFilteredMembers( memberFilters, name ) )
             {
-                duplicates.put( name, jar );
-                addRemappedClass( remapper, jos, jar, name, is );
+                addFilteredClass( remapper, cachedJar, memberFilters, writer, jar, name, inputJar, entry, metrics );
             }
-            else if ( shadeRequest.isShadeSourcesContent() && name.endsWith( ".java" ) )
+            else
             {
-                // Avoid duplicates
-                if ( resources.contains( mappedName ) )
-                {
-                    return;
-                }
-
-                addJavaSource( resources, jos, mappedName, is, shadeRequest.getRelocators() );
+                addRemappedClass( remapper, cachedJar, writer, jar, name, inputJar, entry, metrics );
             }
-            else
+        }
+        else if ( shadeRequest.isShadeSourcesContent() && name.endsWith( ".java" ) )
+        {
+            // Avoid duplicates
+            if ( resources.contains( mappedName ) )
             {
-                if ( !resourceTransformed( transformers, mappedName, is, shadeRequest.getRelocators() ) )
-                {
-                    // Avoid duplicates that aren't accounted for by the resource transformers
-                    if ( resources.contains( mappedName ) )
-                    {
-                        return;
-                    }
-
-                    addResource( resources, jos, mappedName, is );
-                }
+                return;
             }
 
+            addJavaSource( resources, writer, mappedName, inputJar.getInputStream( entry ),
+                           shadeRequest.getRelocators() );
         }
-        finally
+        else
         {
-            IOUtil.close( is );
+            long start = System.nanoTime();
+            boolean transformed =
+                resourceTransformed( transformers, mappedName, inputJar, entry, shadeRequest.getRelocators() );
+            metrics.time( ShadeMetrics.TRANSFORM, start );
+            if ( !transformed )
+            {
+                // Avoid duplicates that aren't accounted for by the resource transformers
+                if ( resources.contains( mappedName ) )
+                {
+                    return;
+                }
+
+                addResource( resources, writer, mappedName, inputJar, entry, metrics );
+            }
         }
     }
 
@@ -330,27 +422,25 @@ public class DefaultShader
         {
             for ( File jar : shadeRequest.getJars() )
             {
+                boolean processed = false;
                 JarFile jarFile = newJarFile( jar );
                 try
                 {
-                    for ( Enumeration<JarEntry> en = jarFile.entries(); en.hasMoreElements(); )
+                    JarEntry entry = findManifest( jarFile );
+                    if ( entry != null && manifestTransformer.canTransformResource( entry.getName() ) )
                     {
-                        JarEntry entry = en.nextElement();
                         String resource = entry.getName();
-                        if ( manifestTransformer.canTransformResource( resource ) )
+                        resources.add( resource );
+                        InputStream inputStream = jarFile.getInputStream( entry );
+                        try
+                        {
+                            manifestTransformer.processResource( resource, inputStream,
+                                                                 shadeRequest.getRelocators() );
+                            processed = true;
+                        }
+                        finally
                         {
-                            resources.add( resource );
-                            InputStream inputStream = jarFile.getInputStream( entry );
-                            try
-                            {
-                                manifestTransformer.processResource( resource, inputStream,
-                                                                     shadeRequest.getRelocators() );
-                            }
-                            finally
-                            {
-                                inputStream.close();
-                            }
-                            break;
+                            inputStream.close();
                         }
                     }
                 }
@@ -358,6 +448,12 @@ public class DefaultShader
                 {
                     jarFile.close();
                 }
+
+                // it only keeps the first manifest it comes across, there is no need to open the other jars
+                if ( processed && manifestTransformer.getClass() == ManifestResourceTransformer.class )
+                {
+                    break;
+                }
             }
             if ( manifestTransformer.hasTransformedResource() )
             {
@@ -366,6 +462,30 @@ public class DefaultShader
         }
     }
 
+    /**
+     * Looks up the manifest of a jar without going through all its entries.
+     *
+     * @return the manifest entry, or <code>null</code> if there is none.
+     */
+    private static JarEntry findManifest( JarFile jarFile )
+        throws IOException
+    {
+        JarEntry entry = jarFile.getJarEntry( JarFile.MANIFEST_NAME );
+        if ( entry == null && jarFile.getManifest() != null )
+        {
+            // the name differs in case, which JarFile accepts as well
+            for ( Enumeration<JarEntry> en = jarFile.entries(); en.hasMoreElements(); )
+            {
+                JarEntry candidate = en.nextElement();
+                if ( JarFile.MANIFEST_NAME.equalsIgnoreCase( candidate.getName() ) )
+                {
+                    return candidate;
+                }
+            }
+        }
+        return entry;
+    }
+
     private void showOverlappingWarning()
     {
         getLogger().warn( "maven-shade-plugin has detected that some class files are" );
@@ -430,6 +550,27 @@ public class DefaultShader
         }
     }
 
+    private InputJar newInputJar( File jar )
+        throws IOException
+    {
+        try
+        {
+            return new InputJar( jar );
+        }
+        catch ( ZipException zex )
+        {
+            throw new ZipException( "error in opening zip file " + jar );
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the entry can be copied to the shaded jar without inflating and deflating it.
+     */
+    private static boolean canCopyRaw( ShadedJarWriter writer, InputJar inputJar, ZipArchiveEntry entry )
+    {
+        return writer.canCopyRaw( entry ) && inputJar.canReadEntryData( entry );
+    }
+
     private List<Filter> getFilters( File jar, List<Filter> filters )
     {
         List<Filter> list = new ArrayList<Filter>();
@@ -446,45 +587,204 @@ public class DefaultShader
         return list;
     }
 
-    private void addDirectory( Set<String> resources, JarOutputStream jos, String name )
-        throws IOException
+    private static List<MemberFilter> getMemberFilters( List<Filter> filters )
+    {
+        List<MemberFilter> list = new ArrayList<MemberFilter>();
+
+        for ( Filter filter : filters )
+        {
+            if ( filter instanceof MemberFilter )
+            {
+                list.add( (MemberFilter) filter );
+            }
+        }
+
+        return list;
+    }
+
+    private static boolean hasFilteredMembers( List<MemberFilter> memberFilters, String name )
+    {
+        for ( MemberFilter memberFilter : memberFilters )
+        {
+            if ( memberFilter.hasFilteredMembers( name ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addDirectory( Set<String> resources, ShadedJarWriter writer, String name )
+        throws IOException, MojoExecutionException
     {
         if ( name.lastIndexOf( '/' ) > 0 )
         {
             String parent = name.substring( 0, name.lastIndexOf( '/' ) );
             if ( !resources.contains( parent ) )
             {
-                addDirectory( resources, jos, parent );
+                addDirectory( resources, writer, parent );
             }
         }
 
         // directory entries must end in "/"
-        JarEntry entry = new JarEntry( name + "/" );
-        jos.putNextEntry( entry );
+        writer.addDirectory( name + "/" );
 
         resources.add( name );
     }
 
-    private void addRemappedClass( RelocatorRemapper remapper, JarOutputStream jos, File jar, String name,
-                                   InputStream is )
+    private void addRemappedClass( final RelocatorRemapper remapper, final RelocatedClassCache.CachedJar cachedJar,
+                                   ShadedJarWriter writer, File jar, final String name, InputJar inputJar,
+                                   ZipArchiveEntry entry, final ShadeMetrics.Jar metrics )
         throws IOException, MojoExecutionException
     {
+        long start = System.nanoTime();
+        // unless the class has to be rewritten, its compressed form is copied
+        final byte[] raw = canCopyRaw( writer, inputJar, entry ) ? inputJar.getRawContent( entry ) : null;
+
         if ( !remapper.hasRelocators() )
         {
-            try
+            byte[] content = raw != null ? null : inputJar.getContent( entry );
+            metrics.time( ShadeMetrics.READ, start );
+            writer.addClass( name, jar, content != null ? constant( content ) : null, entry, raw );
+
+            return;
+        }
+
+        // Need to take the .class off for remapping evaluation
+        String mappedName = remapper.map( name.substring( 0, name.indexOf( '.' ) ) );
+
+        byte[] cachedClass = cachedJar != null ? cachedJar.get( name ) : null;
+        if ( cachedClass != null )
+        {
+            if ( cachedClass.length > 0 )
             {
-                jos.putNextEntry( new JarEntry( name ) );
-                IOUtil.copy( is, jos );
+                metrics.time( ShadeMetrics.READ, start );
+                writer.addClass( mappedName + ".class", jar, constant( cachedClass ) );
             }
-            catch ( ZipException e )
+            else
             {
-                getLogger().debug( "We have a duplicate " + name + " in " + jar );
+                byte[] content = raw != null ? null : inputJar.getContent( entry );
+                metrics.time( ShadeMetrics.READ, start );
+                writer.addClass( mappedName + ".class", jar, content != null ? constant( content ) : null, entry,
+                                 raw );
             }
 
             return;
         }
 
-        ClassReader cr = new ClassReader( is );
+        final byte[] originalClass = inputJar.getContent( entry );
+        metrics.time( ShadeMetrics.READ, start );
+
+        if ( cachedJar != null )
+        {
+            cachedJar.expect();
+        }
+
+        // Now we put it back on so the class file is written out with the right extension.
+        writer.addClass( mappedName + ".class", jar, new Callable<byte[]>()
+        {
+            public byte[] call()
+                throws MojoExecutionException
+            {
+                boolean done = false;
+                long start = System.nanoTime();
+                try
+                {
+                    byte[] remappedClass = null;
+                    // if no relocator can match anything in this class, ASM would only rebuild the same class
+                    if ( remapper.canRelocateClassFile( originalClass ) )
+                    {
+                        remappedClass = remapClass( remapper, name, originalClass );
+                    }
+                    if ( cachedJar != null )
+                    {
+                        cachedJar.done( name, remappedClass );
+                    }
+                    done = true;
+                    if ( remappedClass != null )
+                    {
+                        return remappedClass;
+                    }
+                    return raw != null ? null : originalClass;
+                }
+                finally
+                {
+                    if ( !done && cachedJar != null )
+                    {
+                        cachedJar.fail();
+                    }
+                    metrics.time( ShadeMetrics.RELOCATE, start );
+                }
+            }
+        }, entry, raw );
+    }
+
+    /**
+     * Adds a class which loses some members, removing them before relocating it, on the worker threads.
+     */
+    private void addFilteredClass( final RelocatorRemapper remapper, RelocatedClassCache.CachedJar cachedJar,
+                                   final List<MemberFilter> memberFilters, ShadedJarWriter writer, File jar,
+                                   final String name, InputJar inputJar, ZipArchiveEntry entry,
+                                   final ShadeMetrics.Jar metrics )
+        throws IOException, MojoExecutionException
+    {
+        long start = System.nanoTime();
+        final byte[] originalClass = inputJar.getContent( entry );
+        metrics.time( ShadeMetrics.READ, start );
+
+        if ( cachedJar != null )
+        {
+            // the cache holds whole classes, and this one is neither read from it nor stored in it
+            cachedJar.skip();
+        }
+
+        String mappedName =
+            remapper.hasRelocators() ? remapper.map( name.substring( 0, name.indexOf( '.' ) ) ) + ".class" : name;
+        writer.addClass( mappedName, jar, new Callable<byte[]>()
+        {
+            public byte[] call()
+                throws MojoExecutionException
+            {
+                long start = System.nanoTime();
+                byte[] content = originalClass;
+                for ( MemberFilter memberFilter : memberFilters )
+                {
+                    if ( memberFilter.hasFilteredMembers( name ) )
+                    {
+                        content = memberFilter.filterMembers( name, content );
+                    }
+                }
+                metrics.time( ShadeMetrics.FILTER, start );
+
+                if ( remapper.hasRelocators() && remapper.canRelocateClassFile( content ) )
+                {
+                    start = System.nanoTime();
+                    content = remapClass( remapper, name, content );
+                    metrics.time( ShadeMetrics.RELOCATE, start );
+                }
+                return content;
+            }
+        } );
+    }
+
+    private static Callable<byte[]> constant( final byte[] content )
+    {
+        return new Callable<byte[]>()
+        {
+            public byte[] call()
+            {
+                return content;
+            }
+        };
+    }
+
+    /**
+     * Rewrites a class with the given remapper. This may be called concurrently for different classes.
+     */
+    private static byte[] remapClass( RelocatorRemapper remapper, String name, byte[] originalClass )
+        throws MojoExecutionException
+    {
+        ClassReader cr = new ClassReader( originalClass );
 
         // We don't pass the ClassReader here. This forces the ClassWriter to rebuild the constant pool.
         // Copying the original constant pool should be avoided because it would keep references
@@ -522,22 +822,7 @@ public class DefaultShader
             throw new MojoExecutionException( "Error in ASM processing class " + name, ise );
         }
 
-        byte[] renamedClass = cw.toByteArray();
-
-        // Need to take the .class off for remapping evaluation
-        String mappedName = remapper.map( name.substring( 0, name.indexOf( '.' ) ) );
-
-        try
-        {
-            // Now we put it back on so the class file is written out with the right extension.
-            jos.putNextEntry( new JarEntry( mappedName + ".class" ) );
-
-            IOUtil.copy( renamedClass, jos );
-        }
-        catch ( ZipException e )
-        {
-            getLogger().debug( "We have a duplicate " + mappedName + " in " + jar );
-        }
+        return cw.toByteArray();
     }
 
     private boolean isFiltered( List<Filter> filters, String name )
@@ -553,8 +838,8 @@ public class DefaultShader
         return false;
     }
 
-    private boolean resourceTransformed( List<ResourceTransformer> resourceTransformers, String name, InputStream is,
-                                         List<Relocator> relocators )
+    private boolean resourceTransformed( List<ResourceTransformer> resourceTransformers, String name,
+                                         InputJar inputJar, ZipArchiveEntry entry, List<Relocator> relocators )
         throws IOException
     {
         boolean resourceTransformed = false;
@@ -565,7 +850,7 @@ public class DefaultShader
             {
                 getLogger().debug( "Transforming " + name + " using " + transformer.getClass().getName() );
 
-                transformer.processResource( name, is, relocators );
+                transformer.processResource( name, inputJar.getInputStream( entry ), relocators );
 
                 resourceTransformed = true;
 
@@ -575,12 +860,10 @@ public class DefaultShader
         return resourceTransformed;
     }
 
-    private void addJavaSource( Set<String> resources, JarOutputStream jos, String name, InputStream is,
+    private void addJavaSource( Set<String> resources, ShadedJarWriter writer, String name, InputStream is,
                                 List<Relocator> relocators )
-        throws IOException
+        throws IOException, MojoExecutionException
     {
-        jos.putNextEntry( new JarEntry( name ) );
-
         String sourceContent = IOUtil.toString( new InputStreamReader( is, "UTF-8" ) );
 
         for ( Relocator relocator : relocators )
@@ -588,19 +871,28 @@ public class DefaultShader
             sourceContent = relocator.applyToSourceContent( sourceContent );
         }
 
-        OutputStreamWriter writer = new OutputStreamWriter( jos, "UTF-8" );
-        IOUtil.copy( sourceContent, writer );
-        writer.flush();
+        writer.addResource( name, sourceContent.getBytes( "UTF-8" ) );
 
         resources.add( name );
     }
 
-    private void addResource( Set<String> resources, JarOutputStream jos, String name, InputStream is )
-        throws IOException
+    private void addResource( Set<String> resources, ShadedJarWriter writer, String name, InputJar inputJar,
+                              ZipArchiveEntry entry, ShadeMetrics.Jar metrics )
+        throws IOException, MojoExecutionException
     {
-        jos.putNextEntry( new JarEntry( name ) );
-
-        IOUtil.copy( is, jos );
+        long start = System.nanoTime();
+        if ( canCopyRaw( writer, inputJar, entry ) )
+        {
+            byte[] raw = inputJar.getRawContent( entry );
+            metrics.time( ShadeMetrics.READ, start );
+            writer.addRawResource( name, entry, raw );
+        }
+        else
+        {
+            byte[] content = inputJar.getContent( entry );
+            metrics.time( ShadeMetrics.READ, start );
+            writer.addResource( name, content );
+        }
 
         resources.add( name );
     }
@@ -609,18 +901,42 @@ public class DefaultShader
         extends Remapper
     {
 
-        private final Pattern classPattern = Pattern.compile( "(\\[*)?L(.+);" );
+        // CHECKSTYLE_OFF: MagicNumber
+        private static final int MAX_CACHED_NAMES = 1 << 16;
+        // CHECKSTYLE_ON: MagicNumber
+
+        private final RelocatorMatcher matcher;
+
+        /**
+         * Mapped names by name. Classes are remapped concurrently and mostly refer to the same few thousand names.
+         */
+        private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<String, String>();
 
-        List<Relocator> relocators;
+        private final AtomicInteger cached = new AtomicInteger();
+
+        private final AtomicLong hits = new AtomicLong();
+
+        private final AtomicLong misses = new AtomicLong();
 
         public RelocatorRemapper( List<Relocator> relocators )
         {
-            this.relocators = relocators;
+            this.matcher = new RelocatorMatcher( relocators );
         }
 
         public boolean hasRelocators()
         {
-            return !relocators.isEmpty();
+            return !matcher.isEmpty();
+        }
+
+        /**
+         * Checks the constant pool of a class for names that a relocator could apply to.
+         *
+         * @param classFile the bytes of the class.
+         * @return <code>false</code> if remapping the class would not change any name in it.
+         */
+        public boolean canRelocateClassFile( byte[] classFile )
+        {
+            return matcher.canMatchClassFile( classFile );
         }
 
         public Object mapValue( Object object )
@@ -628,34 +944,31 @@ public class DefaultShader
             if ( object instanceof String )
             {
                 String name = (String) object;
-                String value = name;
-
-                String prefix = "";
-                String suffix = "";
 
-                Matcher m = classPattern.matcher( name );
-                if ( m.matches() )
+                int start = classNameStart( name );
+                int end = start == 0 ? name.length() : name.length() - 1;
+                if ( !matcher.mayMatch( name, start, end ) )
                 {
-                    prefix = m.group( 1 ) + "L";
-                    suffix = ";";
-                    name = m.group( 2 );
+                    return name;
                 }
 
-                for ( Relocator r : relocators )
+                String className = name.substring( start, end );
+                Relocator r = matcher.findRelocator( className );
+                if ( r == null )
                 {
-                    if ( r.canRelocateClass( name ) )
-                    {
-                        value = prefix + r.relocateClass( name ) + suffix;
-                        break;
-                    }
-                    else if ( r.canRelocatePath( name ) )
-                    {
-                        value = prefix + r.relocatePath( name ) + suffix;
-                        break;
-                    }
+                    return name;
                 }
 
-                return value;
+                String value;
+                if ( r.canRelocateClass( className ) )
+                {
+                    value = r.relocateClass( className );
+                }
+                else
+                {
+                    value = r.relocatePath( className );
+                }
+                return start == 0 ? value : name.substring( 0, start ) + value + ';';
             }
 
             return super.mapValue( object );
@@ -663,31 +976,81 @@ public class DefaultShader
 
         public String map( String name )
         {
-            String value = name;
+            String value = cache.get( name );
+            if ( value != null )
+            {
+                hits.incrementAndGet();
+                return value;
+            }
+            misses.incrementAndGet();
 
-            String prefix = "";
-            String suffix = "";
+            value = relocate( name );
+            // once full the cache keeps what it has, names seen early tend to be the most common ones
+            if ( cached.get() < MAX_CACHED_NAMES && cache.putIfAbsent( name, value ) == null )
+            {
+                cached.incrementAndGet();
+            }
+            return value;
+        }
+
+        /**
+         * @return the number of {@link #map(String)} calls answered from the cache.
+         */
+        public long getCacheHits()
+        {
+            return hits.get();
+        }
 
-            Matcher m = classPattern.matcher( name );
-            if ( m.matches() )
+        /**
+         * @return the number of {@link #map(String)} calls that had to ask the relocators.
+         */
+        public long getCacheMisses()
+        {
+            return misses.get();
+        }
+
+        private String relocate( String name )
+        {
+            int start = classNameStart( name );
+            int end = start == 0 ? name.length() : name.length() - 1;
+            if ( !matcher.mayMatch( name, start, end ) )
             {
-                prefix = m.group( 1 ) + "L";
-                suffix = ";";
-                name = m.group( 2 );
+                return name;
             }
 
-            for ( Relocator r : relocators )
+            String path = name.substring( start, end );
+            Relocator r = matcher.findPathRelocator( path );
+            if ( r == null )
             {
-                if ( r.canRelocatePath( name ) )
-                {
-                    value = prefix + r.relocatePath( name ) + suffix;
-                    break;
-                }
+                return name;
             }
 
-            return value;
+            String value = r.relocatePath( path );
+            return start == 0 ? value : name.substring( 0, start ) + value + ';';
         }
 
+        /**
+         * Finds the class name in an object type descriptor such as <code>Ljava/lang/String;</code> or
+         * <code>[[Ljava/lang/String;</code>, without allocating anything.
+         *
+         * @param name a name or descriptor.
+         * @return the index the class name starts at, or <code>0</code> if the name is not an object type descriptor.
+         */
+        static int classNameStart( String name )
+        {
+            int length = name.length();
+            int start = 0;
+            while ( start < length && name.charAt( start ) == '[' )
+            {
+                start++;
+            }
+            // there has to be at least one character between the L and the ;
+            if ( length - start > 2 && name.charAt( start ) == 'L' && name.charAt( length - 1 ) == ';' )
+            {
+                return start + 1;
+            }
+            return 0;
+        }
     }
 
 }
@@ -0,0 +1,422 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the entries of an input jar. The central directory is read at once and parsed in place, and the content of an
+ * entry is read with a single positional read into an array of its exact size, which is then inflated, if needed, into
+ * another array of its exact size. No stream is involved, so thousands of small classes do not cost thousands of
+ * streams, buffers and inflaters.
+ * <p/>
+ * Not thread-safe.
+ */
+final class InputJar
+{
+    // CHECKSTYLE_OFF: MagicNumber
+    private static final int LOCAL_HEADER = 0x04034b50;
+
+    private static final int CENTRAL_HEADER = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int UNSET_SHORT = 0xFFFF;
+
+    private static final long UNSET_INT = 0xFFFFFFFFL;
+
+    private static final int ENCRYPTED = 1;
+    // CHECKSTYLE_ON: MagicNumber
+
+    private final File file;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private final List<ZipArchiveEntry> entries;
+
+    private Inflater inflater;
+
+    /**
+     * @param file the jar.
+     * @throws ZipException if the file is not a zip file.
+     */
+    InputJar( File file )
+        throws IOException
+    {
+        this.file = file;
+        this.raf = new RandomAccessFile( file, "r" );
+        try
+        {
+            this.channel = raf.getChannel();
+            this.entries = Collections.unmodifiableList( readCentralDirectory() );
+        }
+        catch ( IOException e )
+        {
+            raf.close();
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            // offsets or lengths out of range
+            raf.close();
+            throw new ZipException( "invalid central directory in " + file + ": " + e );
+        }
+    }
+
+    /**
+     * @return the entries, in the order of the central directory.
+     */
+    List<ZipArchiveEntry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * @param entry an entry of this jar.
+     * @return <code>true</code> if the content of the entry can be read.
+     */
+    boolean canReadEntryData( ZipArchiveEntry entry )
+    {
+        return ( ( (Entry) entry ).flags & ENCRYPTED ) == 0
+            && ( entry.getMethod() == ZipEntry.STORED || entry.getMethod() == ZipEntry.DEFLATED );
+    }
+
+    /**
+     * @param entry an entry of this jar.
+     * @return the content of the entry as it is stored in the jar, compressed or not.
+     */
+    byte[] getRawContent( ZipArchiveEntry entry )
+        throws IOException
+    {
+        return read( (Entry) entry, 0 );
+    }
+
+    /**
+     * @param entry an entry of this jar.
+     * @return the uncompressed content of the entry.
+     */
+    byte[] getContent( ZipArchiveEntry entry )
+        throws IOException
+    {
+        if ( !canReadEntryData( entry ) )
+        {
+            throw new ZipException( "Cannot read " + entry.getName() + " in " + file + ", it is encrypted or uses "
+                + "compression method " + entry.getMethod() );
+        }
+        if ( entry.getMethod() == ZipEntry.STORED )
+        {
+            return getRawContent( entry );
+        }
+
+        // an inflater without zlib header wants an extra byte at the end of its input
+        byte[] raw = read( (Entry) entry, 1 );
+        byte[] content = new byte[toInt( entry.getSize(), entry )];
+        if ( inflater == null )
+        {
+            inflater = new Inflater( true );
+        }
+        int length = 0;
+        try
+        {
+            inflater.setInput( raw );
+            while ( length < content.length && !inflater.finished() )
+            {
+                int n = inflater.inflate( content, length, content.length - length );
+                if ( n == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+                {
+                    break;
+                }
+                length += n;
+            }
+        }
+        catch ( DataFormatException e )
+        {
+            throw new ZipException( "Invalid data in " + entry.getName() + " in " + file + ": " + e.getMessage() );
+        }
+        finally
+        {
+            inflater.reset();
+        }
+        if ( length != content.length )
+        {
+            throw new ZipException( "Invalid size of " + entry.getName() + " in " + file );
+        }
+        return content;
+    }
+
+    /**
+     * @param entry an entry of this jar.
+     * @return a stream over the uncompressed content of the entry, for APIs which want one.
+     */
+    InputStream getInputStream( ZipArchiveEntry entry )
+        throws IOException
+    {
+        return new ByteArrayInputStream( getContent( entry ) );
+    }
+
+    void close()
+        throws IOException
+    {
+        if ( inflater != null )
+        {
+            inflater.end();
+        }
+        raf.close();
+    }
+
+    private List<ZipArchiveEntry> readCentralDirectory()
+        throws IOException
+    {
+        long length = channel.size();
+        int tailSize =
+            (int) Math.min( length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE );
+        ByteBuffer tail = read( length - tailSize, tailSize );
+        int end = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE;
+        while ( end >= 0 && tail.getInt( end ) != END_OF_CENTRAL_DIRECTORY )
+        {
+            end--;
+        }
+        if ( end < 0 )
+        {
+            throw new ZipException( "archive is not a ZIP archive" );
+        }
+
+        // CHECKSTYLE_OFF: MagicNumber
+        long count = u16( tail, end + 10 );
+        long size = u32( tail, end + 12 );
+        long offset = u32( tail, end + 16 );
+        // data prepended to the archive, which the offsets do not account for
+        long shift = length - tailSize + end - size - offset;
+        if ( ( count == UNSET_SHORT || size == UNSET_INT || offset == UNSET_INT ) && end >= ZIP64_LOCATOR_SIZE
+            && tail.getInt( end - ZIP64_LOCATOR_SIZE ) == ZIP64_LOCATOR )
+        {
+            long zip64Offset = tail.getLong( end - ZIP64_LOCATOR_SIZE + 8 );
+            ByteBuffer zip64 = read( zip64Offset, ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE );
+            if ( zip64.getInt( 0 ) != ZIP64_END_OF_CENTRAL_DIRECTORY )
+            {
+                throw new ZipException( "invalid zip64 end of central directory" );
+            }
+            count = zip64.getLong( 32 );
+            size = zip64.getLong( 40 );
+            offset = zip64.getLong( 48 );
+            shift = 0;
+        }
+        // CHECKSTYLE_ON: MagicNumber
+
+        ByteBuffer directory = read( offset + shift, toInt( size, null ) );
+        List<ZipArchiveEntry> result = new ArrayList<ZipArchiveEntry>( (int) Math.min( count, UNSET_SHORT ) );
+        int position = 0;
+        while ( position + CENTRAL_HEADER_SIZE <= size && directory.getInt( position ) == CENTRAL_HEADER )
+        {
+            Entry entry = readEntry( directory, position, shift );
+            result.add( entry );
+            position += CENTRAL_HEADER_SIZE + entry.headerLength;
+        }
+        return result;
+    }
+
+    private Entry readEntry( ByteBuffer directory, int position, long shift )
+        throws IOException
+    {
+        // CHECKSTYLE_OFF: MagicNumber
+        int flags = u16( directory, position + 8 );
+        int method = u16( directory, position + 10 );
+        long crc = u32( directory, position + 16 );
+        long compressedSize = u32( directory, position + 20 );
+        long size = u32( directory, position + 24 );
+        int nameLength = u16( directory, position + 28 );
+        int extraLength = u16( directory, position + 30 );
+        int commentLength = u16( directory, position + 32 );
+        long offset = u32( directory, position + 42 );
+        // CHECKSTYLE_ON: MagicNumber
+
+        int namePosition = position + CENTRAL_HEADER_SIZE;
+        String name =
+            new String( directory.array(), directory.arrayOffset() + namePosition, nameLength, "UTF-8" );
+
+        if ( size == UNSET_INT || compressedSize == UNSET_INT || offset == UNSET_INT )
+        {
+            int extra = namePosition + nameLength;
+            int extraEnd = extra + extraLength;
+            while ( extra + 4 <= extraEnd )
+            {
+                int id = u16( directory, extra );
+                int length = u16( directory, extra + 2 );
+                if ( id == ZIP64_EXTRA )
+                {
+                    // only the values which did not fit are there, in this order
+                    int value = extra + 4;
+                    if ( size == UNSET_INT )
+                    {
+                        size = directory.getLong( value );
+                        value += 8;
+                    }
+                    if ( compressedSize == UNSET_INT )
+                    {
+                        compressedSize = directory.getLong( value );
+                        value += 8;
+                    }
+                    if ( offset == UNSET_INT )
+                    {
+                        offset = directory.getLong( value );
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+        }
+
+        Entry entry = new Entry( name, flags, offset + shift, nameLength + extraLength + commentLength );
+        entry.setMethod( method );
+        entry.setCrc( crc );
+        entry.setSize( size );
+        entry.setCompressedSize( compressedSize );
+        return entry;
+    }
+
+    /**
+     * Reads the data of an entry, with some room to spare at the end.
+     */
+    private byte[] read( Entry entry, int spare )
+        throws IOException
+    {
+        ByteBuffer header = read( entry.localHeaderOffset, LOCAL_HEADER_SIZE );
+        if ( header.getInt( 0 ) != LOCAL_HEADER )
+        {
+            throw new ZipException( "Invalid local header of " + entry.getName() + " in " + file );
+        }
+        // CHECKSTYLE_OFF: MagicNumber
+        long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + u16( header, 26 ) + u16( header, 28 );
+        // CHECKSTYLE_ON: MagicNumber
+
+        int length = toInt( entry.getCompressedSize(), entry );
+        byte[] data = new byte[length + spare];
+        readFully( ByteBuffer.wrap( data, 0, length ), dataOffset );
+        return data;
+    }
+
+    private ByteBuffer read( long position, int length )
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+        readFully( buffer, position );
+        buffer.order( ByteOrder.LITTLE_ENDIAN );
+        return buffer;
+    }
+
+    private void readFully( ByteBuffer buffer, long position )
+        throws IOException
+    {
+        long next = position;
+        while ( buffer.hasRemaining() )
+        {
+            int n = channel.read( buffer, next );
+            if ( n < 0 )
+            {
+                throw new EOFException( "Unexpected end of " + file );
+            }
+            next += n;
+        }
+    }
+
+    private int toInt( long size, ZipArchiveEntry entry )
+        throws ZipException
+    {
+        if ( size > Integer.MAX_VALUE )
+        {
+            throw new ZipException( ( entry != null ? entry.getName() : "The central directory" ) + " in " + file
+                + " is too large" );
+        }
+        return (int) size;
+    }
+
+    private static int u16( ByteBuffer buffer, int index )
+    {
+        // CHECKSTYLE_OFF: MagicNumber
+        return buffer.getShort( index ) & 0xFFFF;
+        // CHECKSTYLE_ON: MagicNumber
+    }
+
+    private static long u32( ByteBuffer buffer, int index )
+    {
+        return buffer.getInt( index ) & UNSET_INT;
+    }
+
+    /**
+     * An entry, with what is needed to find its data.
+     */
+    private static final class Entry
+        extends ZipArchiveEntry
+    {
+        private final int flags;
+
+        private final long localHeaderOffset;
+
+        /**
+         * The length of the variable part of the central directory header.
+         */
+        private final int headerLength;
+
+        Entry( String name, int flags, long localHeaderOffset, int headerLength )
+        {
+            super( name );
+            this.flags = flags;
+            this.localHeaderOffset = localHeaderOffset;
+            this.headerLength = headerLength;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Keeps the classes rewritten by the relocators between builds, so that a jar which did not change is not run through
+ * ASM again. There is one cache file per jar, named after the SHA-1 of the jar's content, of the relocation
+ * configuration and of the versions of the plugin and of ASM, holding the rewritten classes by their name in that
+ * jar, and an empty entry for each class which was copied unchanged. Classes which are not in the file, such as those
+ * filtered out by the build which wrote it, are relocated as usual and added to it.
+ * <p/>
+ * Filters and resource transformers are still applied on every build: they are cheap, and the transformers have to
+ * see every resource anyway.
+ * <p/>
+ * Files are touched when they are used. Once a shading is done, {@link #evict()} keeps the files it used and as many
+ * of the others, the most recently used first, since most jars which changed, such as the project's own, will not
+ * be seen again.
+ */
+final class RelocatedClassCache
+{
+    /**
+     * Bump when the way classes are rewritten or stored changes, so that old cache files are not used. Released
+     * versions of the plugin and of ASM are told apart by {@link CodeVersion} anyway.
+     */
+    private static final String FORMAT = "2";
+
+    private static final String SUFFIX = ".zip";
+
+    /**
+     * Stands for a class which is used as it is.
+     */
+    private static final byte[] UNCHANGED = new byte[0];
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+
+    private final String fingerprint;
+
+    private final Logger logger;
+
+    private final Set<File> used = new HashSet<File>();
+
+    private RelocatedClassCache( File directory, String fingerprint, Logger logger )
+    {
+        this.directory = directory;
+        this.fingerprint = fingerprint;
+        this.logger = logger;
+    }
+
+    /**
+     * @param directory the directory to keep the cache files in.
+     * @param relocators the relocators.
+     * @param logger the logger.
+     * @return the cache, or <code>null</code> if the relocators cannot be described well enough to key a cache.
+     */
+    static RelocatedClassCache create( File directory, List<Relocator> relocators, Logger logger )
+    {
+        StringBuilder fingerprint = new StringBuilder( FORMAT );
+        fingerprint.append( '\n' ).append( CodeVersion.get() );
+        for ( Relocator relocator : relocators )
+        {
+            // a subclass may relocate differently with the same configuration
+            if ( relocator.getClass() != SimpleRelocator.class )
+            {
+                logger.debug( "Not caching relocated classes, " + relocator.getClass().getName()
+                    + " is not supported" );
+                return null;
+            }
+            SimpleRelocator simpleRelocator = (SimpleRelocator) relocator;
+            fingerprint.append( '\n' ).append( simpleRelocator.isRawString() );
+            fingerprint.append( '\n' ).append( simpleRelocator.getPathPattern() );
+            fingerprint.append( '\n' ).append( simpleRelocator.getShadedPathPattern() );
+            fingerprint.append( '\n' ).append( simpleRelocator.getPattern() );
+            fingerprint.append( '\n' ).append( simpleRelocator.getShadedPattern() );
+            fingerprint.append( '\n' ).append( simpleRelocator.getIncludes() );
+            fingerprint.append( '\n' ).append( simpleRelocator.getExcludes() );
+        }
+        return new RelocatedClassCache( directory, fingerprint.toString(), logger );
+    }
+
+    /**
+     * Looks up the cache file of a jar.
+     *
+     * @param jar the input jar.
+     * @return the cached classes of the jar, empty if there is no cache file yet, which records the classes shaded.
+     */
+    CachedJar open( File jar )
+        throws IOException
+    {
+        MessageDigest digest = sha1();
+        digest.update( utf8( fingerprint ) );
+        InputStream in = new FileInputStream( jar );
+        try
+        {
+            // CHECKSTYLE_OFF: MagicNumber
+            byte[] buffer = new byte[8192];
+            // CHECKSTYLE_ON: MagicNumber
+            for ( int n = in.read( buffer ); n != -1; n = in.read( buffer ) )
+            {
+                digest.update( buffer, 0, n );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        File file = new File( directory, toHex( digest.digest() ) + SUFFIX );
+        used.add( file );
+
+        if ( file.isFile() )
+        {
+            try
+            {
+                Map<String, byte[]> classes = read( file );
+                logger.debug( "Using relocated classes of " + jar + " from " + file );
+                // noinspection ResultOfMethodCallIgnored
+                file.setLastModified( System.currentTimeMillis() );
+                return new CachedJar( jar, file, classes );
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Could not read " + file + ", relocating the classes of " + jar + " again: "
+                    + e.getMessage() );
+            }
+        }
+        return new CachedJar( jar, file, null );
+    }
+
+    private static Map<String, byte[]> read( File file )
+        throws IOException
+    {
+        Map<String, byte[]> classes = new TreeMap<String, byte[]>();
+        ZipInputStream in = new ZipInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try
+        {
+            for ( ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry() )
+            {
+                byte[] content = IOUtil.toByteArray( in );
+                classes.put( entry.getName(), content.length > 0 ? content : UNCHANGED );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        return classes;
+    }
+
+    private void write( File file, Map<String, byte[]> classes )
+    {
+        File temp = null;
+        try
+        {
+            // noinspection ResultOfMethodCallIgnored
+            directory.mkdirs();
+            // unique even when several builds share the directory
+            temp = File.createTempFile( file.getName(), ".tmp", directory );
+            ZipOutputStream out = new ZipOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+            try
+            {
+                for ( Map.Entry<String, byte[]> entry : classes.entrySet() )
+                {
+                    out.putNextEntry( new ZipEntry( entry.getKey() ) );
+                    out.write( entry.getValue() );
+                }
+            }
+            finally
+            {
+                IOUtil.close( out );
+            }
+            if ( !temp.renameTo( file ) && !file.isFile() )
+            {
+                throw new IOException( "Could not rename " + temp + " to " + file );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Could not write relocated classes to " + file + ": " + e.getMessage() );
+        }
+        finally
+        {
+            if ( temp != null )
+            {
+                // noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes the cache files which were not used by the shadings since this cache was created, but for as many of
+     * the most recently used ones.
+     */
+    void evict()
+    {
+        File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        List<File> unused = new ArrayList<File>();
+        for ( File file : files )
+        {
+            if ( file.getName().endsWith( SUFFIX ) && !used.contains( file ) )
+            {
+                unused.add( file );
+            }
+        }
+        Collections.sort( unused, new Comparator<File>()
+        {
+            public int compare( File a, File b )
+            {
+                long difference = b.lastModified() - a.lastModified();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        } );
+        for ( File file : unused.subList( Math.min( used.size(), unused.size() ), unused.size() ) )
+        {
+            logger.debug( "Removing the unused cache file " + file );
+            // noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static MessageDigest sha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static byte[] utf8( String s )
+    {
+        try
+        {
+            return s.getBytes( "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static String toHex( byte[] bytes )
+    {
+        char[] chars = new char[bytes.length * 2];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            // CHECKSTYLE_OFF: MagicNumber
+            chars[i * 2] = HEX[( bytes[i] >> 4 ) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+            // CHECKSTYLE_ON: MagicNumber
+        }
+        return new String( chars );
+    }
+
+    /**
+     * The cached classes of one jar. The classes which are not cached yet are recorded while shading the jar, possibly
+     * from several threads, and written to the cache with the others once all of them are done.
+     */
+    final class CachedJar
+    {
+        private final File jar;
+
+        private final File file;
+
+        private final Map<String, byte[]> classes;
+
+        private int added;
+
+        private int outstanding;
+
+        private boolean closed;
+
+        private boolean failed;
+
+        private boolean stored;
+
+        CachedJar( File jar, File file, Map<String, byte[]> classes )
+        {
+            this.jar = jar;
+            this.file = file;
+            this.classes = classes != null ? classes : new TreeMap<String, byte[]>();
+        }
+
+        /**
+         * @param name the name of a class in the jar.
+         * @return the rewritten class, an empty array if the class is used as it is, or <code>null</code> if the class
+         *         is not in the cache and has to be relocated.
+         */
+        synchronized byte[] get( String name )
+        {
+            return classes.get( name );
+        }
+
+        /**
+         * Announces a class which will be reported with {@link #done(String, byte[])} or {@link #fail()}.
+         */
+        synchronized void expect()
+        {
+            outstanding++;
+        }
+
+        /**
+         * @param name the name of a class in the jar.
+         * @param rewritten the rewritten class, or <code>null</code> if the class was used as it is.
+         */
+        synchronized void done( String name, byte[] rewritten )
+        {
+            classes.put( name, rewritten != null ? rewritten : UNCHANGED );
+            added++;
+            outstanding--;
+            store();
+        }
+
+        /**
+         * Reports that an expected class could not be processed, so the jar will not be cached.
+         */
+        synchronized void fail()
+        {
+            failed = true;
+            outstanding--;
+        }
+
+        /**
+         * Reports a class which is not relocated as usual, so the jar will not be cached.
+         */
+        synchronized void skip()
+        {
+            failed = true;
+        }
+
+        /**
+         * Tells that all classes of the jar have been announced.
+         */
+        synchronized void close()
+        {
+            closed = true;
+            store();
+        }
+
+        private void store()
+        {
+            if ( added > 0 && !stored && closed && !failed && outstanding == 0 )
+            {
+                logger.debug( "Caching " + added + " more classes of " + jar + " in " + file );
+                write( file, classes );
+                stored = true;
+            }
+        }
+    }
+}
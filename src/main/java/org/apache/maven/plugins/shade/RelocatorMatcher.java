@@ -0,0 +1,340 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the first relocator, in configuration order, that applies to a name.
+ * <p/>
+ * A {@link SimpleRelocator} only applies to names starting with its path pattern (or its class pattern, which is the
+ * same with dots instead of slashes), so the path patterns are compiled into a prefix trie and a single walk over the
+ * name yields the few relocators worth asking. Other relocators are always asked.
+ */
+final class RelocatorMatcher
+{
+    private static final int[] NONE = new int[0];
+
+    private final Relocator[] relocators;
+
+    private final Node root = new Node();
+
+    /**
+     * Indexes of the relocators not in the trie, ascending.
+     */
+    private final int[] unindexed;
+
+    /**
+     * The byte sequences one of which a name has to contain to be relocated, or <code>null</code> if some relocator
+     * can not be described that way.
+     */
+    private final byte[][] needles;
+
+    RelocatorMatcher( List<Relocator> relocators )
+    {
+        this.relocators = relocators.toArray( new Relocator[relocators.size()] );
+
+        List<Integer> others = new ArrayList<Integer>();
+        for ( int i = 0; i < this.relocators.length; i++ )
+        {
+            Relocator relocator = this.relocators[i];
+            if ( isIndexable( relocator ) )
+            {
+                root.add( ( (SimpleRelocator) relocator ).getPathPattern(), 0, i );
+            }
+            else
+            {
+                others.add( i );
+            }
+        }
+        unindexed = toArray( others );
+        needles = needles( this.relocators );
+    }
+
+    /**
+     * @return <code>true</code> if no relocator is configured.
+     */
+    boolean isEmpty()
+    {
+        return relocators.length == 0;
+    }
+
+    /**
+     * @param path a path or internal class name.
+     * @return the first relocator which can relocate the path, or <code>null</code>.
+     */
+    Relocator findPathRelocator( String path )
+    {
+        int found = find( path, false );
+        return found < relocators.length ? relocators[found] : null;
+    }
+
+    /**
+     * @param name a class name or path.
+     * @return the first relocator which can relocate the name as a class or as a path, or <code>null</code>.
+     */
+    Relocator findRelocator( String name )
+    {
+        int found = find( name, true );
+        return found < relocators.length ? relocators[found] : null;
+    }
+
+    /**
+     * Tells without asking any relocator, and without allocating anything, whether a relocator might apply to part of a
+     * name.
+     *
+     * @param name a class name or path.
+     * @param start the index the part starts at.
+     * @param end the index the part ends before.
+     * @return <code>false</code> if no relocator can apply to the part.
+     */
+    boolean mayMatch( String name, int start, int end )
+    {
+        if ( unindexed.length > 0 || reaches( name, start, end ) )
+        {
+            return true;
+        }
+        // see find
+        return start < end && name.charAt( start ) == '/' && reaches( name, start + 1, end );
+    }
+
+    /**
+     * Scans the constant pool of a class for names that a relocator could apply to.
+     *
+     * @param classFile the bytes of a class.
+     * @return <code>false</code> if no relocator can apply to any name in the class.
+     */
+    boolean canMatchClassFile( byte[] classFile )
+    {
+        return relocators.length > 0 && ( needles == null || ConstantPoolScanner.containsAny( classFile, needles ) );
+    }
+
+    private int find( String name, boolean classOrPath )
+    {
+        int best = relocators.length;
+
+        for ( int index : unindexed )
+        {
+            if ( matches( index, name, classOrPath ) )
+            {
+                best = index;
+                break;
+            }
+        }
+
+        best = walk( name, 0, best, classOrPath );
+
+        // SimpleRelocator also accepts paths with an extra / in front of the pattern, see MSHADE-119
+        if ( name.length() > 0 && name.charAt( 0 ) == '/' )
+        {
+            best = walk( name, 1, best, classOrPath );
+        }
+
+        return best;
+    }
+
+    /**
+     * Walks the trie along the name, asking every relocator whose pattern is a prefix of the name and which comes
+     * before the best one found so far.
+     */
+    private int walk( String name, int from, int best, boolean classOrPath )
+    {
+        Node node = root;
+        best = check( node, name, best, classOrPath );
+
+        for ( int i = from; i < name.length(); i++ )
+        {
+            char c = name.charAt( i );
+            // path patterns never contain dots, but class names use them where the pattern has slashes
+            node = node.child( c == '.' ? '/' : c );
+            if ( node == null )
+            {
+                break;
+            }
+            best = check( node, name, best, classOrPath );
+        }
+
+        return best;
+    }
+
+    /**
+     * @return <code>true</code> if the pattern of some relocator in the trie is a prefix of the part of the name.
+     */
+    private boolean reaches( String name, int start, int end )
+    {
+        Node node = root;
+        for ( int i = start; node.relocators.length == 0; i++ )
+        {
+            if ( i == end )
+            {
+                return false;
+            }
+            char c = name.charAt( i );
+            node = node.child( c == '.' ? '/' : c );
+            if ( node == null )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int check( Node node, String name, int best, boolean classOrPath )
+    {
+        for ( int index : node.relocators )
+        {
+            if ( index >= best )
+            {
+                break;
+            }
+            if ( matches( index, name, classOrPath ) )
+            {
+                return index;
+            }
+        }
+        return best;
+    }
+
+    private boolean matches( int index, String name, boolean classOrPath )
+    {
+        Relocator relocator = relocators[index];
+        return ( classOrPath && relocator.canRelocateClass( name ) ) || relocator.canRelocatePath( name );
+    }
+
+    /**
+     * Subclasses may decide differently which names they relocate, so only plain SimpleRelocators are indexed.
+     */
+    private static boolean isIndexable( Relocator relocator )
+    {
+        return relocator.getClass() == SimpleRelocator.class && !( (SimpleRelocator) relocator ).isRawString();
+    }
+
+    private static byte[][] needles( Relocator[] relocators )
+    {
+        List<byte[]> needles = new ArrayList<byte[]>();
+        for ( Relocator relocator : relocators )
+        {
+            // a relocator we cannot index might match on any string
+            if ( !isIndexable( relocator ) )
+            {
+                return null;
+            }
+            SimpleRelocator simpleRelocator = (SimpleRelocator) relocator;
+            if ( !addNeedle( needles, simpleRelocator.getPathPattern() )
+                || !addNeedle( needles, simpleRelocator.getPattern() ) )
+            {
+                return null;
+            }
+        }
+        return needles.toArray( new byte[needles.size()][] );
+    }
+
+    private static boolean addNeedle( List<byte[]> needles, String pattern )
+    {
+        if ( pattern.length() == 0 )
+        {
+            // matches everything
+            return false;
+        }
+        byte[] needle = new byte[pattern.length()];
+        for ( int i = 0; i < needle.length; i++ )
+        {
+            char c = pattern.charAt( i );
+            // CHECKSTYLE_OFF: MagicNumber
+            if ( c == 0 || c > 0x7F )
+            // CHECKSTYLE_ON: MagicNumber
+            {
+                // not encoded as a single byte in the class file
+                return false;
+            }
+            needle[i] = (byte) c;
+        }
+        needles.add( needle );
+        return true;
+    }
+
+    private static int[] toArray( List<Integer> list )
+    {
+        int[] array = new int[list.size()];
+        for ( int i = 0; i < array.length; i++ )
+        {
+            array[i] = list.get( i );
+        }
+        return array;
+    }
+
+    private static final class Node
+    {
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        /**
+         * Indexes of the relocators whose pattern ends here, ascending.
+         */
+        private int[] relocators = NONE;
+
+        Node child( char c )
+        {
+            for ( int i = 0; i < keys.length; i++ )
+            {
+                if ( keys[i] == c )
+                {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void add( String pattern, int offset, int relocator )
+        {
+            if ( offset == pattern.length() )
+            {
+                int[] grown = new int[relocators.length + 1];
+                System.arraycopy( relocators, 0, grown, 0, relocators.length );
+                grown[relocators.length] = relocator;
+                relocators = grown;
+                return;
+            }
+
+            char c = pattern.charAt( offset );
+            Node child = child( c );
+            if ( child == null )
+            {
+                child = new Node();
+
+                char[] grownKeys = new char[keys.length + 1];
+                System.arraycopy( keys, 0, grownKeys, 0, keys.length );
+                grownKeys[keys.length] = c;
+                keys = grownKeys;
+
+                Node[] grownChildren = new Node[children.length + 1];
+                System.arraycopy( children, 0, grownChildren, 0, children.length );
+                grownChildren[children.length] = child;
+                children = grownChildren;
+            }
+            child.add( pattern, offset + 1, relocator );
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * Time spent in each phase of shading, and entry and byte counts, for the whole shaded jar and for each input jar.
+ * The phases are reading the input jars, evaluating the filters, relocating classes, running the resource transformers,
+ * and compressing and writing the entries of the shaded jar. Relocation and compression may run on several threads, so
+ * their times add up the time of all threads and the phases together can take longer than shading itself.
+ * <p/>
+ * Instances are safe to update from several threads.
+ */
+class ShadeMetrics
+{
+    static final int READ = 0;
+
+    static final int FILTER = 1;
+
+    static final int RELOCATE = 2;
+
+    static final int TRANSFORM = 3;
+
+    static final int WRITE = 4;
+
+    private static final String[] PHASES = { "read", "filter", "relocate", "transform", "write" };
+
+    // CHECKSTYLE_OFF: MagicNumber
+    private static final long KB = 1024;
+    // CHECKSTYLE_ON: MagicNumber
+
+    private final File uberJar;
+
+    private final int threads;
+
+    private final long start = System.nanoTime();
+
+    private long end;
+
+    private final Jar total = new Jar( null );
+
+    private final List<Jar> jars = new ArrayList<Jar>();
+
+    /**
+     * @param uberJar the shaded jar.
+     * @param threads the number of threads shading uses.
+     */
+    ShadeMetrics( File uberJar, int threads )
+    {
+        this.uberJar = uberJar;
+        this.threads = threads;
+    }
+
+    /**
+     * @param file an input jar.
+     * @return the metrics of the input jar, which also count for the whole shaded jar.
+     */
+    Jar addJar( File file )
+    {
+        Jar jar = new Jar( file );
+        jars.add( jar );
+        return jar;
+    }
+
+    /**
+     * @return the metrics of the work which does not belong to a single input jar.
+     */
+    Jar getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * Stops the clock of the whole shading.
+     */
+    void finished()
+    {
+        end = System.nanoTime();
+    }
+
+    /**
+     * The counters of an input jar. The time of each phase is also added to the whole shaded jar.
+     */
+    final class Jar
+    {
+        private final File file;
+
+        private final AtomicLong[] nanos = new AtomicLong[PHASES.length];
+
+        private final AtomicLong entries = new AtomicLong();
+
+        private final AtomicLong written = new AtomicLong();
+
+        private final AtomicLong bytesOut = new AtomicLong();
+
+        private Jar( File file )
+        {
+            this.file = file;
+            for ( int i = 0; i < nanos.length; i++ )
+            {
+                nanos[i] = new AtomicLong();
+            }
+        }
+
+        /**
+         * @param phase one of the phases, such as {@link ShadeMetrics#RELOCATE}.
+         * @param startNanos the value of {@link System#nanoTime()} when the phase started.
+         */
+        void time( int phase, long startNanos )
+        {
+            long elapsed = System.nanoTime() - startNanos;
+            nanos[phase].addAndGet( elapsed );
+            if ( this != total )
+            {
+                total.nanos[phase].addAndGet( elapsed );
+            }
+        }
+
+        /**
+         * Counts an entry read from the jar.
+         */
+        void entry()
+        {
+            entries.incrementAndGet();
+        }
+
+        /**
+         * Counts an entry written to the shaded jar.
+         *
+         * @param compressedSize the number of bytes the entry takes in the shaded jar.
+         */
+        void written( long compressedSize )
+        {
+            written.incrementAndGet();
+            bytesOut.addAndGet( compressedSize );
+        }
+
+        private long millis( int phase )
+        {
+            return TimeUnit.NANOSECONDS.toMillis( nanos[phase].get() );
+        }
+
+        private long millis()
+        {
+            long sum = 0;
+            for ( AtomicLong phase : nanos )
+            {
+                sum += phase.get();
+            }
+            return TimeUnit.NANOSECONDS.toMillis( sum );
+        }
+
+        private long bytesIn()
+        {
+            return file != null ? file.length() : 0;
+        }
+    }
+
+    /**
+     * Logs the metrics as a table, the input jars which took the longest first.
+     *
+     * @param logger the logger.
+     * @param info <code>true</code> to log at info level, <code>false</code> to log at debug level.
+     */
+    void log( Logger logger, boolean info )
+    {
+        List<String> lines = new ArrayList<String>();
+        lines.add( "Shaded " + uberJar.getName() + " in " + TimeUnit.NANOSECONDS.toMillis( end - start ) + " ms using "
+            + ( threads == 1 ? "1 thread, time per phase (ms):"
+                            : threads + " threads, time per phase summed over all threads (ms):" ) );
+        StringBuilder header = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for ( int i = 0; i < PHASES.length; i++ )
+        {
+            header.append( String.format( "%10s", PHASES[i] ) );
+            values.append( String.format( "%10d", total.millis( i ) ) );
+        }
+        lines.add( header.toString() );
+        lines.add( values.toString() );
+
+        lines.add( String.format( "%-40s %9s %9s %9s %9s %9s", "jar", "entries", "written", "in (KB)", "out (KB)",
+                                  "time (ms)" ) );
+        for ( Jar jar : sortedJars() )
+        {
+            lines.add( String.format( "%-40s %9d %9d %9d %9d %9d", jar.file.getName(), jar.entries.get(),
+                                      jar.written.get(), jar.bytesIn() / KB, jar.bytesOut.get() / KB,
+                                      jar.millis() ) );
+        }
+
+        for ( String line : lines )
+        {
+            if ( info )
+            {
+                logger.info( line );
+            }
+            else
+            {
+                logger.debug( line );
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics as JSON.
+     *
+     * @param report the file to write.
+     */
+    void writeReport( File report )
+        throws IOException
+    {
+        // noinspection ResultOfMethodCallIgnored
+        report.getAbsoluteFile().getParentFile().mkdirs();
+        Writer writer = WriterFactory.newWriter( report, "UTF-8" );
+        try
+        {
+            writer.write( "{\n" );
+            writer.write( "  \"jar\": " + quote( uberJar.getPath() ) + ",\n" );
+            writer.write( "  \"threads\": " + threads + ",\n" );
+            writer.write( "  \"millis\": " + TimeUnit.NANOSECONDS.toMillis( end - start ) + ",\n" );
+            writer.write( "  \"bytesOut\": " + uberJar.length() + ",\n" );
+            writer.write( "  \"phases\": " + phases( total ) + ",\n" );
+            writer.write( "  \"jars\": [" );
+            List<Jar> sorted = sortedJars();
+            for ( int i = 0; i < sorted.size(); i++ )
+            {
+                Jar jar = sorted.get( i );
+                writer.write( i == 0 ? "\n" : ",\n" );
+                writer.write( "    { \"file\": " + quote( jar.file.getPath() ) + ", \"entries\": " + jar.entries.get()
+                    + ", \"written\": " + jar.written.get() + ", \"bytesIn\": " + jar.bytesIn() + ", \"bytesOut\": "
+                    + jar.bytesOut.get() + ", \"millis\": " + jar.millis() + ", \"phases\": " + phases( jar )
+                    + " }" );
+            }
+            writer.write( "\n  ]\n" );
+            writer.write( "}\n" );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    private List<Jar> sortedJars()
+    {
+        List<Jar> sorted = new ArrayList<Jar>( jars );
+        Collections.sort( sorted, new Comparator<Jar>()
+        {
+            public int compare( Jar o1, Jar o2 )
+            {
+                long m1 = o1.millis();
+                long m2 = o2.millis();
+                return m1 > m2 ? -1 : ( m1 < m2 ? 1 : 0 );
+            }
+        } );
+        return sorted;
+    }
+
+    private static String phases( Jar jar )
+    {
+        StringBuilder sb = new StringBuilder( "{ " );
+        for ( int i = 0; i < PHASES.length; i++ )
+        {
+            if ( i > 0 )
+            {
+                sb.append( ", " );
+            }
+            sb.append( '"' ).append( PHASES[i] ).append( "\": " ).append( jar.millis( i ) );
+        }
+        return sb.append( " }" ).toString();
+    }
+
+    private static String quote( String s )
+    {
+        StringBuilder sb = new StringBuilder( "\"" );
+        for ( int i = 0; i < s.length(); i++ )
+        {
+            char c = s.charAt( i );
+            if ( c == '"' || c == '\\' )
+            {
+                sb.append( '\\' ).append( c );
+            }
+            else if ( c < ' ' )
+            {
+                sb.append( String.format( "\\u%04x", (int) c ) );
+            }
+            else
+            {
+                sb.append( c );
+            }
+        }
+        return sb.append( '"' ).toString();
+    }
+}
@@ -24,8 +24,10 @@ import org.apache.maven.plugins.shade.relocation.Relocator;
 import org.apache.maven.plugins.shade.resource.ResourceTransformer;
 
 import java.io.File;
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.Deflater;
 
 /**
  * Parameter object used to pass multitude of args to Shader.shade()
@@ -47,6 +49,18 @@ public class ShadeRequest
 
     private boolean shadeSourcesContent;
 
+    private int threads = 1;
+
+    private File relocationCacheDirectory;
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private boolean uncompressed;
+
+    private Date outputTimestamp;
+
+    private File metricsReport;
+
     public Set<File> getJars()
     {
         return jars;
@@ -156,4 +170,97 @@ public class ShadeRequest
     {
         this.listShadedInJar = listShadedInJar;
     }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * The number of threads used to relocate classes. With more than one thread the classes are read and remapped on a
+     * worker pool while the entries are still written in their original order. A value of zero or less uses one
+     * thread per available processor.
+     *
+     * @param threads the number of threads, defaults to 1.
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = threads;
+    }
+
+    public File getRelocationCacheDirectory()
+    {
+        return relocationCacheDirectory;
+    }
+
+    /**
+     * The directory where the classes rewritten by the relocators are kept between builds, so that jars which did not
+     * change are not relocated again.
+     *
+     * @param relocationCacheDirectory the directory, or <code>null</code> to relocate every jar on every build.
+     */
+    public void setRelocationCacheDirectory( File relocationCacheDirectory )
+    {
+        this.relocationCacheDirectory = relocationCacheDirectory;
+    }
+
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    /**
+     * The level used to compress the entries written to the uber jar. Entries copied unchanged from the input jars
+     * keep their compression.
+     *
+     * @param compressionLevel from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}, the default.
+     */
+    public void setCompressionLevel( int compressionLevel )
+    {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public boolean isUncompressed()
+    {
+        return uncompressed;
+    }
+
+    /**
+     * @param uncompressed if true, the entries of the uber jar are stored without compression.
+     */
+    public void setUncompressed( boolean uncompressed )
+    {
+        this.uncompressed = uncompressed;
+    }
+
+    public Date getOutputTimestamp()
+    {
+        return outputTimestamp;
+    }
+
+    /**
+     * The time given to all entries of the uber jar, so that the same input always gives the same jar.
+     *
+     * @param outputTimestamp the time, or <code>null</code> to use the current time.
+     */
+    public void setOutputTimestamp( Date outputTimestamp )
+    {
+        this.outputTimestamp = outputTimestamp;
+    }
+
+    public File getMetricsReport()
+    {
+        return metricsReport;
+    }
+
+    /**
+     * Where to write the time spent in each phase of shading and the entry and byte counts of each jar, as JSON. These
+     * metrics are then also logged at info level instead of debug level.
+     *
+     * @param metricsReport the file, or <code>null</code> not to write one.
+     */
+    public void setMetricsReport( File metricsReport )
+    {
+        this.metricsReport = metricsReport;
+    }
 }
@@ -0,0 +1,304 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.compress.archivers.zip.JarMarker;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A {@link JarOutputStream} writing through commons-compress, which can also copy an entry in its compressed form from
+ * another zip file without inflating and deflating it again. Resource transformers still get a plain
+ * {@link JarOutputStream} to write their entries to.
+ * <p/>
+ * Unlike {@link JarOutputStream}, entries may be {@link ZipEntry#STORED} without knowing their size and CRC up front:
+ * their content is then kept in memory until the entry is closed.
+ */
+class ShadedJarOutputStream
+    extends JarOutputStream
+{
+    private static final OutputStream UNUSED = new OutputStream()
+    {
+        public void write( int b )
+            throws IOException
+        {
+            throw new IOException( "not used" );
+        }
+    };
+
+    private final ZipArchiveOutputStream zos;
+
+    private final Set<String> names = new HashSet<String>();
+
+    private int method = ZipEntry.DEFLATED;
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    private long entryTime = -1;
+
+    private boolean entryOpen;
+
+    /**
+     * The stored entry being written, whose size and CRC are computed from {@link #buffer} once it is closed.
+     */
+    private ZipArchiveEntry storedEntry;
+
+    private ByteArrayOutputStream buffer;
+
+    private boolean finished;
+
+    ShadedJarOutputStream( OutputStream out )
+        throws IOException
+    {
+        super( UNUSED );
+        this.zos = new ZipArchiveOutputStream( out );
+    }
+
+    public void putNextEntry( ZipEntry ze )
+        throws IOException
+    {
+        // ZipArchiveEntry( ZipEntry ) rejects the unset values a JarEntry usually has
+        ZipArchiveEntry entry = new ZipArchiveEntry( ze.getName() );
+        if ( ze.getMethod() != -1 )
+        {
+            entry.setMethod( ze.getMethod() );
+        }
+        if ( ze.getTime() != -1 )
+        {
+            entry.setTime( ze.getTime() );
+        }
+        if ( ze.getSize() != -1 )
+        {
+            entry.setSize( ze.getSize() );
+        }
+        if ( ze.getCompressedSize() != -1 )
+        {
+            entry.setCompressedSize( ze.getCompressedSize() );
+        }
+        if ( ze.getCrc() != -1 )
+        {
+            entry.setCrc( ze.getCrc() );
+        }
+        if ( ze.getExtra() != null )
+        {
+            entry.setExtra( ze.getExtra() );
+        }
+        entry.setComment( ze.getComment() );
+        add( entry );
+        int entryMethod = entry.getMethod() != -1 ? entry.getMethod() : method;
+        if ( entryMethod == ZipEntry.STORED && ( entry.getSize() == -1 || entry.getCrc() == -1 ) )
+        {
+            entry.setMethod( ZipEntry.STORED );
+            storedEntry = entry;
+            buffer = new ByteArrayOutputStream();
+        }
+        else
+        {
+            zos.putArchiveEntry( entry );
+        }
+        entryOpen = true;
+    }
+
+    /**
+     * @param source an entry of another zip file.
+     * @return <code>true</code> if the entry can be copied by {@link #addRawEntry(ZipArchiveEntry, InputStream)}.
+     */
+    boolean canAddRawEntry( ZipArchiveEntry source )
+    {
+        return source.getMethod() == ZipEntry.STORED
+            || ( source.getMethod() == ZipEntry.DEFLATED && method == ZipEntry.DEFLATED );
+    }
+
+    /**
+     * Adds an entry whose content is already compressed as described by the entry.
+     *
+     * @param entry the entry, with method, CRC, size and compressed size set.
+     * @param raw the compressed content.
+     */
+    void addRawEntry( ZipArchiveEntry entry, InputStream raw )
+        throws IOException
+    {
+        add( entry );
+        zos.addRawArchiveEntry( entry, raw );
+    }
+
+    private void add( ZipArchiveEntry entry )
+        throws IOException
+    {
+        closeEntry();
+        if ( !names.add( entry.getName() ) )
+        {
+            // same as JarOutputStream, callers rely on it to detect duplicates
+            throw new ZipException( "duplicate entry: " + entry.getName() );
+        }
+        if ( entryTime != -1 )
+        {
+            entry.setTime( entryTime );
+        }
+        if ( names.size() == 1 )
+        {
+            // marks the file as a jar, as JarOutputStream does
+            entry.addAsFirstExtraField( JarMarker.getInstance() );
+        }
+    }
+
+    public void closeEntry()
+        throws IOException
+    {
+        if ( entryOpen )
+        {
+            entryOpen = false;
+            if ( storedEntry != null )
+            {
+                byte[] content = buffer.toByteArray();
+                CRC32 crc = new CRC32();
+                crc.update( content );
+                storedEntry.setSize( content.length );
+                storedEntry.setCrc( crc.getValue() );
+                zos.putArchiveEntry( storedEntry );
+                zos.write( content );
+                storedEntry = null;
+                buffer = null;
+            }
+            zos.closeArchiveEntry();
+        }
+    }
+
+    /**
+     * Sets the default method of the following entries, either {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}.
+     * Entries copied with {@link #addRawEntry(ZipArchiveEntry, InputStream)} are only accepted when they use the same
+     * method, or are stored.
+     */
+    public void setMethod( int method )
+    {
+        zos.setMethod( method );
+        this.method = method;
+    }
+
+    /**
+     * @return the default method of the entries.
+     */
+    int getMethod()
+    {
+        return method;
+    }
+
+    public void setLevel( int level )
+    {
+        zos.setLevel( level );
+        this.level = level;
+    }
+
+    /**
+     * @return the level deflated entries are compressed with.
+     */
+    int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Gives all following entries the same time, instead of the time they are written at or the time of their source.
+     * Zip files store local times, so the time is shifted by the offset of the default time zone: the stored value
+     * is then the same wherever the jar is built, and reads as the given time in UTC.
+     *
+     * @param time the time in milliseconds since the epoch.
+     */
+    void setEntryTime( long time )
+    {
+        this.entryTime = time - TimeZone.getDefault().getOffset( time );
+    }
+
+    public void setComment( String comment )
+    {
+        zos.setComment( comment );
+    }
+
+    public void write( int b )
+        throws IOException
+    {
+        if ( storedEntry != null )
+        {
+            buffer.write( b );
+        }
+        else
+        {
+            zos.write( b );
+        }
+    }
+
+    public void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        if ( storedEntry != null )
+        {
+            buffer.write( b, off, len );
+        }
+        else
+        {
+            zos.write( b, off, len );
+        }
+    }
+
+    public void flush()
+        throws IOException
+    {
+        zos.flush();
+    }
+
+    public void finish()
+        throws IOException
+    {
+        if ( !finished )
+        {
+            closeEntry();
+            zos.finish();
+            finished = true;
+        }
+    }
+
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            finish();
+        }
+        finally
+        {
+            // the deflater of the unused JarOutputStream
+            def.end();
+            zos.close();
+        }
+    }
+}
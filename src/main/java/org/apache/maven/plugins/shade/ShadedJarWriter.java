@@ -0,0 +1,518 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.logging.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes the entries of the shaded jar in exactly the order they are added, while the content of class entries may
+ * be computed concurrently on a worker pool. Entries added after a class that is still being processed are held back
+ * until that class has been written, so the resulting jar is the same whatever the number of threads.
+ * <p/>
+ * Entries whose content is not changed by shading are copied in their compressed form, as read from the input jar.
+ * The other entries are compressed each one on its own, on the pool if there is one, and the writing thread only
+ * appends the compressed bytes; their sizes are then known before they are written, whatever the number of
+ * threads.
+ */
+class ShadedJarWriter
+{
+    // CHECKSTYLE_OFF: MagicNumber
+    private static final int BUFFER_SIZE = 8192;
+    // CHECKSTYLE_ON: MagicNumber
+
+    private final ShadedJarOutputStream jos;
+
+    private final ExecutorService executor;
+
+    private final int maxPending;
+
+    private final Logger logger;
+
+    private final LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
+
+    private ShadeMetrics.Jar metrics;
+
+    /**
+     * A deflater per thread compressing entries, reset after each entry.
+     */
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>();
+
+    /**
+     * All the deflaters of {@link #deflaters}, so that {@link #cancel()} can end those of the pool threads too.
+     */
+    private final List<Deflater> allDeflaters = new ArrayList<Deflater>();
+
+    /**
+     * Whether {@link #cancel()} ended the deflaters; guarded by {@link #allDeflaters}.
+     */
+    private boolean deflatersEnded;
+
+    /**
+     * @param jos the stream of the shaded jar.
+     * @param executor the pool computing and compressing entries, or <code>null</code> to do it on the calling
+     *            thread.
+     * @param maxPending the number of entries which may be queued before the caller waits for the oldest one.
+     * @param logger the logger.
+     */
+    ShadedJarWriter( ShadedJarOutputStream jos, ExecutorService executor, int maxPending, Logger logger )
+    {
+        this.jos = jos;
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.logger = logger;
+    }
+
+    /**
+     * @return the underlying stream; {@link #flush()} has to be called before writing to it directly.
+     */
+    JarOutputStream getJarOutputStream()
+    {
+        return jos;
+    }
+
+    /**
+     * @param metrics counts the entries added from now on, or <code>null</code> not to count them.
+     */
+    void setMetrics( ShadeMetrics.Jar metrics )
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param source an entry of an input jar.
+     * @return <code>true</code> if the entry can be added in its compressed form.
+     */
+    boolean canCopyRaw( ZipArchiveEntry source )
+    {
+        return jos.canAddRawEntry( source );
+    }
+
+    void addDirectory( String name )
+        throws IOException, MojoExecutionException
+    {
+        add( new PendingEntry( name, null, null, null, false, metrics ) );
+    }
+
+    void addResource( String name, byte[] content )
+        throws IOException, MojoExecutionException
+    {
+        if ( executor == null )
+        {
+            add( new PendingEntry( name, call( compress( constant( content ), null ) ), null, null, false,
+                                   metrics ) );
+        }
+        else
+        {
+            add( new PendingEntry( name, null, executor.submit( compress( constant( content ), null ) ), null,
+                                   false, metrics ) );
+        }
+    }
+
+    /**
+     * Adds a resource by copying its compressed content.
+     *
+     * @param name the name of the entry in the shaded jar.
+     * @param source the entry in the input jar, telling how the content is compressed.
+     * @param raw the compressed content of the entry in the input jar.
+     */
+    void addRawResource( String name, ZipArchiveEntry source, byte[] raw )
+        throws IOException, MojoExecutionException
+    {
+        add( new PendingEntry( name, new RawContent( source, raw ), null, null, false, metrics ) );
+    }
+
+    /**
+     * Adds a class entry. The first entry with a given name wins; later duplicates are only logged.
+     *
+     * @param name the name of the entry in the shaded jar.
+     * @param jar the jar the class comes from.
+     * @param content computes the content of the class, possibly on a worker thread.
+     */
+    void addClass( String name, File jar, Callable<byte[]> content )
+        throws IOException, MojoExecutionException
+    {
+        addClass( name, jar, content, null, null );
+    }
+
+    /**
+     * Adds a class entry which may be copied in its compressed form. The first entry with a given name wins; later
+     * duplicates are only logged.
+     *
+     * @param name the name of the entry in the shaded jar.
+     * @param jar the jar the class comes from.
+     * @param content computes the content of the class, possibly on a worker thread, or returns <code>null</code> to
+     *            copy the compressed content; <code>null</code> to always copy it.
+     * @param source the entry in the input jar, telling how the content is compressed.
+     * @param raw the compressed content of the entry in the input jar, or <code>null</code> if it cannot be copied.
+     */
+    void addClass( String name, File jar, Callable<byte[]> content, ZipArchiveEntry source, byte[] raw )
+        throws IOException, MojoExecutionException
+    {
+        RawContent rawContent = raw != null ? new RawContent( source, raw ) : null;
+        if ( content == null )
+        {
+            add( new PendingEntry( name, rawContent, null, jar, true, metrics ) );
+        }
+        else if ( executor == null )
+        {
+            add( new PendingEntry( name, call( compress( content, rawContent ) ), null, jar, true, metrics ) );
+        }
+        else
+        {
+            add( new PendingEntry( name, null, executor.submit( compress( content, rawContent ) ), jar, true,
+                                   metrics ) );
+        }
+    }
+
+    /**
+     * Writes all pending entries.
+     */
+    void flush()
+        throws IOException, MojoExecutionException
+    {
+        while ( !pending.isEmpty() )
+        {
+            write( pending.removeFirst() );
+        }
+    }
+
+    /**
+     * Drops the pending entries, interrupting the ones which are still being computed, and ends the deflaters of all
+     * threads. Has to be called once the writer is no longer used, whether it succeeded or not.
+     */
+    void cancel()
+    {
+        for ( PendingEntry entry : pending )
+        {
+            if ( entry.future != null )
+            {
+                entry.future.cancel( true );
+            }
+        }
+        pending.clear();
+
+        synchronized ( allDeflaters )
+        {
+            for ( Deflater deflater : allDeflaters )
+            {
+                deflater.end();
+            }
+            allDeflaters.clear();
+            deflatersEnded = true;
+        }
+        deflaters.remove();
+    }
+
+    private void add( PendingEntry entry )
+        throws IOException, MojoExecutionException
+    {
+        if ( pending.isEmpty() && entry.future == null )
+        {
+            write( entry );
+            return;
+        }
+
+        pending.addLast( entry );
+
+        while ( pending.size() > maxPending )
+        {
+            write( pending.removeFirst() );
+        }
+    }
+
+    private void write( PendingEntry entry )
+        throws IOException, MojoExecutionException
+    {
+        RawContent raw = entry.future != null ? get( entry.future ) : entry.raw;
+
+        long start = System.nanoTime();
+        try
+        {
+            if ( raw != null )
+            {
+                jos.addRawEntry( rawEntry( entry.name, raw.source ), new ByteArrayInputStream( raw.data ) );
+                if ( entry.metrics != null )
+                {
+                    entry.metrics.written( raw.data.length );
+                }
+            }
+            else
+            {
+                jos.putNextEntry( new JarEntry( entry.name ) );
+            }
+        }
+        catch ( ZipException e )
+        {
+            if ( !entry.duplicateAllowed )
+            {
+                throw e;
+            }
+            logger.debug( "We have a duplicate " + entry.name + " in " + entry.jar );
+        }
+        finally
+        {
+            if ( entry.metrics != null )
+            {
+                entry.metrics.time( ShadeMetrics.WRITE, start );
+            }
+        }
+    }
+
+    /**
+     * @param content computes the content to compress, or returns <code>null</code> to use the fallback.
+     * @param fallback the content already in its compressed form.
+     * @return a task computing the content and compressing it as the shaded jar would.
+     */
+    private Callable<RawContent> compress( final Callable<byte[]> content, final RawContent fallback )
+    {
+        final int method = jos.getMethod();
+        final int level = jos.getLevel();
+        final ShadeMetrics.Jar jarMetrics = metrics;
+        return new Callable<RawContent>()
+        {
+            public RawContent call()
+                throws Exception
+            {
+                byte[] data = content.call();
+                if ( data == null )
+                {
+                    return fallback;
+                }
+
+                long start = System.nanoTime();
+                try
+                {
+                    return compress( data, method, level );
+                }
+                finally
+                {
+                    if ( jarMetrics != null )
+                    {
+                        jarMetrics.time( ShadeMetrics.WRITE, start );
+                    }
+                }
+            }
+        };
+    }
+
+    private RawContent compress( byte[] data, int method, int level )
+    {
+        CRC32 crc = new CRC32();
+        crc.update( data );
+        ZipArchiveEntry entry = new ZipArchiveEntry( "" );
+        entry.setMethod( method );
+        entry.setCrc( crc.getValue() );
+        entry.setSize( data.length );
+        if ( method == ZipEntry.STORED )
+        {
+            entry.setCompressedSize( data.length );
+            return new RawContent( entry, data );
+        }
+
+        byte[] deflated = deflate( data, level );
+        entry.setCompressedSize( deflated.length );
+        return new RawContent( entry, deflated );
+    }
+
+    private byte[] deflate( byte[] data, int level )
+    {
+        Deflater deflater = deflaters.get();
+        if ( deflater == null )
+        {
+            // raw deflate data, as in a zip file
+            deflater = new Deflater( level, true );
+            synchronized ( allDeflaters )
+            {
+                if ( deflatersEnded )
+                {
+                    deflater.end();
+                    throw new CancellationException( "The shaded jar is no longer written" );
+                }
+                allDeflaters.add( deflater );
+            }
+            deflaters.set( deflater );
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try
+        {
+            deflater.setInput( data );
+            deflater.finish();
+            while ( !deflater.finished() )
+            {
+                int n = deflater.deflate( buffer );
+                out.write( buffer, 0, n );
+            }
+        }
+        finally
+        {
+            deflater.reset();
+        }
+        return out.toByteArray();
+    }
+
+    private static Callable<byte[]> constant( final byte[] content )
+    {
+        return new Callable<byte[]>()
+        {
+            public byte[] call()
+            {
+                return content;
+            }
+        };
+    }
+
+    private static ZipArchiveEntry rawEntry( String name, ZipArchiveEntry source )
+    {
+        // only what describes the content, the rest is set as for any other entry
+        ZipArchiveEntry entry = new ZipArchiveEntry( name );
+        entry.setMethod( source.getMethod() );
+        entry.setCrc( source.getCrc() );
+        entry.setSize( source.getSize() );
+        entry.setCompressedSize( source.getCompressedSize() );
+        return entry;
+    }
+
+    private static <T> T call( Callable<T> content )
+        throws IOException, MojoExecutionException
+    {
+        try
+        {
+            return content.call();
+        }
+        catch ( IOException e )
+        {
+            throw e;
+        }
+        catch ( MojoExecutionException e )
+        {
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            throw e;
+        }
+        catch ( Exception e )
+        {
+            throw new MojoExecutionException( e.getMessage(), e );
+        }
+    }
+
+    private static RawContent get( Future<RawContent> future )
+        throws IOException, MojoExecutionException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while waiting for a class to be relocated", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof MojoExecutionException )
+            {
+                throw (MojoExecutionException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new MojoExecutionException( cause.getMessage(), cause );
+        }
+    }
+
+    /**
+     * The content of an entry in its compressed form.
+     */
+    private static final class RawContent
+    {
+        /**
+         * How {@link #data} is compressed.
+         */
+        private final ZipArchiveEntry source;
+
+        private final byte[] data;
+
+        RawContent( ZipArchiveEntry source, byte[] data )
+        {
+            this.source = source;
+            this.data = data;
+        }
+    }
+
+    private static final class PendingEntry
+    {
+        private final String name;
+
+        private final RawContent raw;
+
+        private final Future<RawContent> future;
+
+        private final File jar;
+
+        private final boolean duplicateAllowed;
+
+        private final ShadeMetrics.Jar metrics;
+
+        PendingEntry( String name, RawContent raw, Future<RawContent> future, File jar, boolean duplicateAllowed,
+                      ShadeMetrics.Jar metrics )
+        {
+            this.name = name;
+            this.raw = raw;
+            this.future = future;
+            this.jar = jar;
+            this.duplicateAllowed = duplicateAllowed;
+            this.metrics = metrics;
+        }
+    }
+}
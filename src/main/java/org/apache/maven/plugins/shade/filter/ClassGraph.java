@@ -0,0 +1,279 @@
+package org.apache.maven.plugins.shade.filter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The classes of several jars and the classes they refer to, as a graph over int ids. Each class name, whether found
+ * in a jar or only referred to, gets an id; the references of all classes are kept in two int arrays, one holding the
+ * references class after class and the other where those of each class start. A class found in several jars refers
+ * to the classes referred to by any of them. The classes named by string constants can be taken as references too.
+ * <p/>
+ * Sets of classes are {@link BitSet}s indexed by id.
+ */
+final class ClassGraph
+{
+    private static final int[] NONE = new int[0];
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    private final String[] names;
+
+    private final BitSet classes = new BitSet();
+
+    /**
+     * The classes named by string constants, when they are taken as references.
+     */
+    private final BitSet namedClasses = new BitSet();
+
+    /**
+     * The ids of the classes of each jar.
+     */
+    private final int[][] jarClasses;
+
+    /**
+     * The id of the Main-Class of each jar, or -1.
+     */
+    private final int[] mainClasses;
+
+    /**
+     * The ids of the service types and providers of each jar, one pair after the other.
+     */
+    private final int[][] services;
+
+    /**
+     * Where the references of each id start in {@link #references}, and where those of the last id end.
+     */
+    private final int[] offsets;
+
+    private final int[] references;
+
+    /**
+     * @param jars the classes of each jar, <code>null</code> for the jars which could not be read.
+     * @param namedReferences <code>true</code> if a class also refers to the classes named by its string constants.
+     */
+    ClassGraph( ClassReferences[] jars, boolean namedReferences )
+    {
+        // the ids of the names of each jar
+        int[][] jarIds = new int[jars.length][];
+        List<String> names = new ArrayList<String>();
+        for ( int i = 0; i < jars.length; i++ )
+        {
+            if ( jars[i] == null )
+            {
+                continue;
+            }
+            String[] jarNames = jars[i].getNames();
+            jarIds[i] = new int[jarNames.length];
+            for ( int j = 0; j < jarNames.length; j++ )
+            {
+                Integer id = ids.get( jarNames[j] );
+                if ( id == null )
+                {
+                    id = names.size();
+                    ids.put( jarNames[j], id );
+                    names.add( jarNames[j] );
+                }
+                jarIds[i][j] = id;
+            }
+        }
+        this.names = names.toArray( new String[names.size()] );
+
+        mainClasses = new int[jars.length];
+        services = new int[jars.length][];
+        for ( int i = 0; i < jars.length; i++ )
+        {
+            ClassReferences jar = jars[i];
+            mainClasses[i] = jar != null && jar.getMainClass() != -1 ? jarIds[i][jar.getMainClass()] : -1;
+            services[i] = jar == null ? NONE : new int[2 * jar.getServiceCount()];
+            for ( int j = 0; jar != null && j < jar.getServiceCount(); j++ )
+            {
+                services[i][2 * j] = jarIds[i][jar.getServiceType( j )];
+                services[i][2 * j + 1] = jarIds[i][jar.getServiceProvider( j )];
+            }
+        }
+
+        // count the references of each id, then lay them out one id after the other
+        offsets = new int[this.names.length + 1];
+        jarClasses = new int[jars.length][];
+        for ( int i = 0; i < jars.length; i++ )
+        {
+            ClassReferences jar = jars[i];
+            jarClasses[i] = jar == null ? NONE : new int[jar.size()];
+            for ( int j = 0; jar != null && j < jar.size(); j++ )
+            {
+                int id = jarIds[i][jar.getNameIndex( j )];
+                jarClasses[i][j] = id;
+                classes.set( id );
+                offsets[id + 1] += jar.getReferencesEnd( j ) - jar.getReferencesStart( j );
+                if ( namedReferences )
+                {
+                    offsets[id + 1] += jar.getNamedClassesEnd( j ) - jar.getNamedClassesStart( j );
+                }
+            }
+        }
+        for ( int id = 0; id < this.names.length; id++ )
+        {
+            offsets[id + 1] += offsets[id];
+        }
+        references = new int[offsets[this.names.length]];
+        int[] next = new int[this.names.length];
+        System.arraycopy( offsets, 0, next, 0, next.length );
+        for ( int i = 0; i < jars.length; i++ )
+        {
+            ClassReferences jar = jars[i];
+            for ( int j = 0; jar != null && j < jar.size(); j++ )
+            {
+                int id = jarClasses[i][j];
+                for ( int k = jar.getReferencesStart( j ); k < jar.getReferencesEnd( j ); k++ )
+                {
+                    references[next[id]++] = jarIds[i][jar.getReference( k )];
+                }
+                for ( int k = jar.getNamedClassesStart( j ); namedReferences && k < jar.getNamedClassesEnd( j ); k++ )
+                {
+                    int namedClass = jarIds[i][jar.getNamedClass( k )];
+                    references[next[id]++] = namedClass;
+                    namedClasses.set( namedClass );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of ids, from 0 to this number excluded.
+     */
+    int size()
+    {
+        return names.length;
+    }
+
+    /**
+     * @param name the name of a class, such as <code>org.example.Foo</code>.
+     * @return its id, or -1 if no jar has or refers to such a class.
+     */
+    int getId( String name )
+    {
+        Integer id = ids.get( name );
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @param id an id.
+     * @return the name of the class.
+     */
+    String getName( int id )
+    {
+        return names[id];
+    }
+
+    /**
+     * @return a new set of the classes found in the jars, without those only referred to.
+     */
+    BitSet getClasses()
+    {
+        return (BitSet) classes.clone();
+    }
+
+    /**
+     * @return a new set of the names in string constants taken as references, whether they name a class or not.
+     */
+    BitSet getNamedClasses()
+    {
+        return (BitSet) namedClasses.clone();
+    }
+
+    /**
+     * @param jar the index of a jar.
+     * @return the ids of its classes. The array must not be modified.
+     */
+    int[] getJarClasses( int jar )
+    {
+        return jarClasses[jar];
+    }
+
+    /**
+     * @param jar the index of a jar.
+     * @return the id of the Main-Class of its manifest, or -1.
+     */
+    int getMainClass( int jar )
+    {
+        return mainClasses[jar];
+    }
+
+    /**
+     * @param jar the index of a jar.
+     * @return the ids of the service types and providers it registers, one pair after the other. The array must not be
+     *         modified.
+     */
+    int[] getServices( int jar )
+    {
+        return services[jar];
+    }
+
+    /**
+     * @param roots some classes.
+     * @return a new set of the classes and of all the classes they refer to, directly or not, whether they were found
+     *         in a jar or not.
+     */
+    BitSet getTransitiveDependencies( BitSet roots )
+    {
+        BitSet found = new BitSet();
+        addTransitiveDependencies( found, roots );
+        return found;
+    }
+
+    /**
+     * @param found a set of classes with all the classes they refer to, directly or not, to which are added some
+     *            classes and all the classes they refer to.
+     * @param roots the classes to add.
+     */
+    void addTransitiveDependencies( BitSet found, BitSet roots )
+    {
+        // each id is pushed at most once
+        int[] pending = new int[names.length];
+        int count = 0;
+        for ( int id = roots.nextSetBit( 0 ); id >= 0; id = roots.nextSetBit( id + 1 ) )
+        {
+            if ( !found.get( id ) )
+            {
+                found.set( id );
+                pending[count++] = id;
+            }
+        }
+        while ( count > 0 )
+        {
+            int id = pending[--count];
+            for ( int i = offsets[id]; i < offsets[id + 1]; i++ )
+            {
+                int reference = references[i];
+                if ( !found.get( reference ) )
+                {
+                    found.set( reference );
+                    pending[count++] = reference;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,897 @@
+package org.apache.maven.plugins.shade.filter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.codehaus.plexus.util.IOUtil;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+/**
+ * The classes of a jar, and the classes each of them refers to, by their name with dots such as
+ * <code>org.example.Foo</code>. A class refers to every class named in its bytecode except in debug information:
+ * super types, field and method types, annotations, generic signatures and the classes used by its instructions.
+ * The Main-Class of the manifest and the service providers registered in <code>META-INF/services</code> are recorded
+ * too, as classes are also loaded from there, and so are the string constants which look like class names, such as
+ * those given to <code>Class.forName</code>.
+ * <p/>
+ * Reading a jar means running all of its classes through ASM, so the result can be kept in a cache directory, in a
+ * file named after the SHA-1 of the jar's content. A jar which did not change is then only read to compute its
+ * checksum. The jars read are also kept in memory for as long as the plugin's classes are loaded, which is the whole
+ * build for all the modules of a reactor, so that the dependencies several modules shade are read once.
+ */
+final class ClassReferences
+{
+    /**
+     * Bump when the way references are collected or stored changes, so that old cache files are not used.
+     */
+    private static final int FORMAT = 3;
+
+    private static final String SERVICES = "META-INF/services/";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The jars read with a cache directory, by path. The garbage collector may take them back.
+     */
+    private static final ConcurrentMap<String, ReadJar> READ_JARS = new ConcurrentHashMap<String, ReadJar>();
+
+    /**
+     * The names of the classes of the jar and of the classes they refer to, each once.
+     */
+    private final String[] names;
+
+    /**
+     * The index in {@link #names} of each class of the jar.
+     */
+    private final int[] classes;
+
+    /**
+     * Where the references of each class start in {@link #references}, and where those of the last class end.
+     */
+    private final int[] offsets;
+
+    /**
+     * The index in {@link #names} of the classes referred to, class after class.
+     */
+    private final int[] references;
+
+    /**
+     * Where the class names in string constants of each class start in {@link #namedClasses}, and where those of the
+     * last class end.
+     */
+    private final int[] namedOffsets;
+
+    /**
+     * The index in {@link #names} of the class names in string constants, class after class.
+     */
+    private final int[] namedClasses;
+
+    /**
+     * The index in {@link #names} of the Main-Class of the manifest, or -1.
+     */
+    private final int mainClass;
+
+    /**
+     * The index in {@link #names} of the service types and of their providers, one pair after the other.
+     */
+    private final int[] services;
+
+    private ClassReferences( String[] names, int[] classes, int[] offsets, int[] references, int[] namedOffsets,
+                             int[] namedClasses, int mainClass, int[] services )
+    {
+        this.names = names;
+        this.classes = classes;
+        this.offsets = offsets;
+        this.references = references;
+        this.namedOffsets = namedOffsets;
+        this.namedClasses = namedClasses;
+        this.mainClass = mainClass;
+        this.services = services;
+    }
+
+    /**
+     * @return the number of classes in the jar.
+     */
+    int size()
+    {
+        return classes.length;
+    }
+
+    /**
+     * @param index the index of a class, from 0 to {@link #size()} excluded.
+     * @return the name of the class.
+     */
+    String getClassName( int index )
+    {
+        return names[classes[index]];
+    }
+
+    /**
+     * @return the names of the classes of the jar and of the classes they refer to, which need not be in the jar, each
+     *         once. The array must not be modified.
+     */
+    String[] getNames()
+    {
+        return names;
+    }
+
+    /**
+     * @param index the index of a class, from 0 to {@link #size()} excluded.
+     * @return the index of its name in {@link #getNames()}.
+     */
+    int getNameIndex( int index )
+    {
+        return classes[index];
+    }
+
+    /**
+     * @param index the index of a class, from 0 to {@link #size()} excluded.
+     * @return the position of its first reference for {@link #getReference(int)}.
+     */
+    int getReferencesStart( int index )
+    {
+        return offsets[index];
+    }
+
+    /**
+     * @param index the index of a class, from 0 to {@link #size()} excluded.
+     * @return the position after its last reference for {@link #getReference(int)}.
+     */
+    int getReferencesEnd( int index )
+    {
+        return offsets[index + 1];
+    }
+
+    /**
+     * @param position the position of a reference, from {@link #getReferencesStart(int)} to
+     *            {@link #getReferencesEnd(int)} excluded for the class which refers to it.
+     * @return the index in {@link #getNames()} of the class referred to. A class does not refer to itself.
+     */
+    int getReference( int position )
+    {
+        return references[position];
+    }
+
+    /**
+     * @param index the index of a class, from 0 to {@link #size()} excluded.
+     * @return the position of the first class name in its string constants for {@link #getNamedClass(int)}.
+     */
+    int getNamedClassesStart( int index )
+    {
+        return namedOffsets[index];
+    }
+
+    /**
+     * @param index the index of a class, from 0 to {@link #size()} excluded.
+     * @return the position after the last class name in its string constants for {@link #getNamedClass(int)}.
+     */
+    int getNamedClassesEnd( int index )
+    {
+        return namedOffsets[index + 1];
+    }
+
+    /**
+     * @param position the position of a class name, from {@link #getNamedClassesStart(int)} to
+     *            {@link #getNamedClassesEnd(int)} excluded for the class whose string constant it is.
+     * @return the index in {@link #getNames()} of the name, which may not be the name of any class.
+     */
+    int getNamedClass( int position )
+    {
+        return namedClasses[position];
+    }
+
+    /**
+     * @return the index in {@link #getNames()} of the Main-Class of the manifest of the jar, or -1 if it has none.
+     */
+    int getMainClass()
+    {
+        return mainClass;
+    }
+
+    /**
+     * @return the number of service providers registered by the jar.
+     */
+    int getServiceCount()
+    {
+        return services.length / 2;
+    }
+
+    /**
+     * @param index the index of a service provider, from 0 to {@link #getServiceCount()} excluded.
+     * @return the index in {@link #getNames()} of the service type, which names the file in
+     *         <code>META-INF/services</code>.
+     */
+    int getServiceType( int index )
+    {
+        return services[2 * index];
+    }
+
+    /**
+     * @param index the index of a service provider, from 0 to {@link #getServiceCount()} excluded.
+     * @return the index in {@link #getNames()} of the provider class, which need not be in the jar.
+     */
+    int getServiceProvider( int index )
+    {
+        return services[2 * index + 1];
+    }
+
+    /**
+     * Reads the classes of a jar through ASM.
+     *
+     * @param jar the jar.
+     * @return the classes of the jar.
+     * @throws java.util.zip.ZipException if the file is not a valid jar.
+     * @throws ArrayIndexOutOfBoundsException if a class is malformed.
+     */
+    static ClassReferences read( File jar )
+        throws IOException
+    {
+        Builder builder = new Builder();
+        JarInputStream in = new JarInputStream( new BufferedInputStream( new FileInputStream( jar ) ) );
+        try
+        {
+            Manifest manifest = in.getManifest();
+            String mainClass = manifest != null ? manifest.getMainAttributes().getValue( Attributes.Name.MAIN_CLASS )
+                            : null;
+            if ( mainClass != null && mainClass.trim().length() > 0 )
+            {
+                builder.setMainClass( builder.index( mainClass.trim() ) );
+            }
+
+            for ( JarEntry entry = in.getNextJarEntry(); entry != null; entry = in.getNextJarEntry() )
+            {
+                String name = entry.getName();
+                if ( name.startsWith( SERVICES ) && !entry.isDirectory() )
+                {
+                    readServices( name.substring( SERVICES.length() ), in, builder );
+                    continue;
+                }
+                if ( !name.endsWith( ".class" ) )
+                {
+                    continue;
+                }
+                // CHECKSTYLE_OFF: MagicNumber
+                String className = name.substring( 0, name.length() - 6 ).replace( '/', '.' );
+                // CHECKSTYLE_ON: MagicNumber
+
+                CollectingRemapper remapper = new CollectingRemapper();
+                ClassVisitor cv = new RemappingClassAdapter( EmptyVisitor.INSTANCE, remapper );
+                // frames only repeat types found elsewhere, they are not expanded
+                new ClassReader( in ).accept( cv, ClassReader.SKIP_DEBUG );
+                remapper.classes.remove( className );
+                remapper.namedClasses.remove( className );
+
+                builder.addClass( builder.index( className ) );
+                for ( String reference : remapper.classes )
+                {
+                    builder.addReference( builder.index( reference ) );
+                }
+                for ( String namedClass : remapper.namedClasses )
+                {
+                    builder.addNamedClass( builder.index( namedClass ) );
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        return builder.build();
+    }
+
+    /**
+     * Adds the providers listed by a service file, one class name per line, ignoring what follows a <code>#</code>.
+     */
+    private static void readServices( String type, InputStream in, Builder builder )
+        throws IOException
+    {
+        // not closed, the jar goes on with the next entry
+        BufferedReader reader = new BufferedReader( new InputStreamReader( in, "UTF-8" ) );
+        int typeIndex = builder.index( type );
+        for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+        {
+            int comment = line.indexOf( '#' );
+            String provider = ( comment != -1 ? line.substring( 0, comment ) : line ).trim();
+            if ( provider.length() > 0 )
+            {
+                builder.addService( typeIndex, builder.index( provider ) );
+            }
+        }
+    }
+
+    /**
+     * Reads the classes of a jar from memory if it was read before during the build, otherwise from the cache
+     * directory, or through ASM and then stores them there.
+     *
+     * @param jar the jar.
+     * @param cacheDirectory the directory holding the classes of the jars read before, or <code>null</code> to always
+     *            read the jar.
+     * @return the classes of the jar.
+     * @throws java.util.zip.ZipException if the file is not a valid jar.
+     * @throws ArrayIndexOutOfBoundsException if a class is malformed.
+     */
+    static ClassReferences read( File jar, File cacheDirectory )
+        throws IOException
+    {
+        return read( jar, cacheDirectory, true );
+    }
+
+    /**
+     * Reads the classes of a jar as {@link #read(File, File)} does, but only stores them in the cache directory if
+     * asked to. Jars which change on every build, such as the project's own, would only fill it up.
+     *
+     * @param jar the jar.
+     * @param cacheDirectory the directory holding the classes of the jars read before, or <code>null</code> to always
+     *            read the jar.
+     * @param persistent <code>false</code> to keep the classes of the jar in memory only.
+     * @return the classes of the jar.
+     * @throws java.util.zip.ZipException if the file is not a valid jar.
+     * @throws ArrayIndexOutOfBoundsException if a class is malformed.
+     */
+    static ClassReferences read( File jar, File cacheDirectory, boolean persistent )
+        throws IOException
+    {
+        if ( cacheDirectory == null )
+        {
+            return read( jar );
+        }
+
+        String path = jar.getAbsolutePath();
+        long length = jar.length();
+        long lastModified = jar.lastModified();
+        ReadJar readJar = READ_JARS.get( path );
+        ClassReferences classReferences =
+            readJar != null && readJar.length == length && readJar.lastModified == lastModified ? readJar.get() : null;
+        if ( classReferences == null )
+        {
+            classReferences = persistent ? readOrLoad( jar, cacheDirectory ) : read( jar );
+            READ_JARS.put( path, new ReadJar( classReferences, length, lastModified ) );
+        }
+        return classReferences;
+    }
+
+    /**
+     * Forgets the jars read before, as if the build had just started.
+     */
+    static void clearReadJars()
+    {
+        READ_JARS.clear();
+    }
+
+    private static ClassReferences readOrLoad( File jar, File cacheDirectory )
+        throws IOException
+    {
+        File file = new File( cacheDirectory, sha1( jar ) + ".classes" );
+        if ( file.isFile() )
+        {
+            try
+            {
+                return load( file );
+            }
+            catch ( IOException e )
+            {
+                // a truncated or older file, written again below
+            }
+            catch ( RuntimeException e )
+            {
+                // a corrupt file, written again below
+            }
+        }
+
+        ClassReferences classReferences = read( jar );
+        classReferences.store( file );
+        return classReferences;
+    }
+
+    private static ClassReferences load( File file )
+        throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try
+        {
+            if ( in.readInt() != FORMAT )
+            {
+                throw new IOException( "Unsupported format" );
+            }
+            Builder builder = new Builder();
+            int names = in.readInt();
+            for ( int i = 0; i < names; i++ )
+            {
+                builder.index( in.readUTF() );
+            }
+            int classes = in.readInt();
+            for ( int i = 0; i < classes; i++ )
+            {
+                builder.addClass( builder.checkIndex( in.readInt() ) );
+                int count = in.readInt();
+                for ( int j = 0; j < count; j++ )
+                {
+                    builder.addReference( builder.checkIndex( in.readInt() ) );
+                }
+                count = in.readInt();
+                for ( int j = 0; j < count; j++ )
+                {
+                    builder.addNamedClass( builder.checkIndex( in.readInt() ) );
+                }
+            }
+            int mainClass = in.readInt();
+            if ( mainClass != -1 )
+            {
+                builder.setMainClass( builder.checkIndex( mainClass ) );
+            }
+            int services = in.readInt();
+            for ( int i = 0; i < services; i++ )
+            {
+                builder.addService( builder.checkIndex( in.readInt() ), builder.checkIndex( in.readInt() ) );
+            }
+            return builder.build();
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * Writes the table of all the names followed by the classes and their references as indexes in the table, since
+     * most names are referred to from many classes.
+     */
+    private void store( File file )
+    {
+        File temp = null;
+        try
+        {
+            // noinspection ResultOfMethodCallIgnored
+            file.getParentFile().mkdirs();
+            // unique even when several builds share the directory
+            temp = File.createTempFile( file.getName(), ".tmp", file.getParentFile() );
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+            try
+            {
+                out.writeInt( FORMAT );
+                out.writeInt( names.length );
+                for ( String name : names )
+                {
+                    out.writeUTF( name );
+                }
+                out.writeInt( classes.length );
+                for ( int i = 0; i < classes.length; i++ )
+                {
+                    out.writeInt( classes[i] );
+                    out.writeInt( offsets[i + 1] - offsets[i] );
+                    for ( int j = offsets[i]; j < offsets[i + 1]; j++ )
+                    {
+                        out.writeInt( references[j] );
+                    }
+                    out.writeInt( namedOffsets[i + 1] - namedOffsets[i] );
+                    for ( int j = namedOffsets[i]; j < namedOffsets[i + 1]; j++ )
+                    {
+                        out.writeInt( namedClasses[j] );
+                    }
+                }
+                out.writeInt( mainClass );
+                out.writeInt( services.length / 2 );
+                for ( int service : services )
+                {
+                    out.writeInt( service );
+                }
+            }
+            finally
+            {
+                IOUtil.close( out );
+            }
+            if ( !temp.renameTo( file ) && !file.isFile() )
+            {
+                throw new IOException( "Could not rename " + temp + " to " + file );
+            }
+        }
+        catch ( IOException e )
+        {
+            // the cache only saves time, the jar is read again by the next build
+        }
+        finally
+        {
+            if ( temp != null )
+            {
+                // noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        }
+    }
+
+    private static String sha1( File jar )
+        throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+        InputStream in = new FileInputStream( jar );
+        try
+        {
+            // CHECKSTYLE_OFF: MagicNumber
+            byte[] buffer = new byte[8192];
+            // CHECKSTYLE_ON: MagicNumber
+            for ( int n = in.read( buffer ); n != -1; n = in.read( buffer ) )
+            {
+                digest.update( buffer, 0, n );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        StringBuilder hex = new StringBuilder();
+        for ( byte b : digest.digest() )
+        {
+            // CHECKSTYLE_OFF: MagicNumber
+            hex.append( HEX[( b >> 4 ) & 0xf] ).append( HEX[b & 0xf] );
+            // CHECKSTYLE_ON: MagicNumber
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A jar read before, with its size and last modification time to tell whether it is still the same.
+     */
+    private static final class ReadJar
+        extends SoftReference<ClassReferences>
+    {
+        private final long length;
+
+        private final long lastModified;
+
+        private ReadJar( ClassReferences classReferences, long length, long lastModified )
+        {
+            super( classReferences );
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Collects the names and the classes of a jar, then their references, into growing arrays.
+     */
+    private static final class Builder
+    {
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        private final List<String> names = new ArrayList<String>();
+
+        // CHECKSTYLE_OFF: MagicNumber
+        private int[] classes = new int[64];
+
+        private int[] offsets = new int[65];
+
+        private int[] references = new int[1024];
+
+        private int[] namedOffsets = new int[65];
+
+        private int[] namedClasses = new int[64];
+        // CHECKSTYLE_ON: MagicNumber
+
+        private int classCount;
+
+        private int referenceCount;
+
+        private int namedClassCount;
+
+        private int mainClass = -1;
+
+        private final List<Integer> services = new ArrayList<Integer>();
+
+        /**
+         * @return the index of the name in the table of names, added if it was not there yet.
+         */
+        int index( String name )
+        {
+            Integer index = indexes.get( name );
+            if ( index == null )
+            {
+                index = names.size();
+                indexes.put( name, index );
+                names.add( name );
+            }
+            return index;
+        }
+
+        int checkIndex( int index )
+            throws IOException
+        {
+            if ( index < 0 || index >= names.size() )
+            {
+                throw new IOException( "Invalid name index " + index );
+            }
+            return index;
+        }
+
+        /**
+         * Starts a class, whose references are added next.
+         */
+        void addClass( int name )
+        {
+            if ( classCount == classes.length )
+            {
+                classes = grow( classes, classCount * 2 );
+                offsets = grow( offsets, classCount * 2 + 1 );
+                namedOffsets = grow( namedOffsets, classCount * 2 + 1 );
+            }
+            classes[classCount++] = name;
+            offsets[classCount] = referenceCount;
+            namedOffsets[classCount] = namedClassCount;
+        }
+
+        void addReference( int name )
+        {
+            if ( referenceCount == references.length )
+            {
+                references = grow( references, referenceCount * 2 );
+            }
+            references[referenceCount++] = name;
+            offsets[classCount] = referenceCount;
+        }
+
+        void addNamedClass( int name )
+        {
+            if ( namedClassCount == namedClasses.length )
+            {
+                namedClasses = grow( namedClasses, namedClassCount * 2 );
+            }
+            namedClasses[namedClassCount++] = name;
+            namedOffsets[classCount] = namedClassCount;
+        }
+
+        void setMainClass( int name )
+        {
+            mainClass = name;
+        }
+
+        void addService( int type, int provider )
+        {
+            services.add( type );
+            services.add( provider );
+        }
+
+        ClassReferences build()
+        {
+            int[] servicesArray = new int[services.size()];
+            for ( int i = 0; i < servicesArray.length; i++ )
+            {
+                servicesArray[i] = services.get( i );
+            }
+            return new ClassReferences( names.toArray( new String[names.size()] ),
+                                        grow( classes, classCount ), grow( offsets, classCount + 1 ),
+                                        grow( references, referenceCount ),
+                                        grow( namedOffsets, classCount + 1 ),
+                                        grow( namedClasses, namedClassCount ), mainClass, servicesArray );
+        }
+
+        /**
+         * @return a copy of the array, cut or padded with zeros to the given length; Java 5 has no Arrays.copyOf.
+         */
+        private static int[] grow( int[] array, int length )
+        {
+            int[] copy = new int[length];
+            System.arraycopy( array, 0, copy, 0, Math.min( array.length, length ) );
+            return copy;
+        }
+    }
+
+    /**
+     * Visits every part of a class, so that the remapping adapters in front of it see all the names in the class.
+     * The adapters only go into fields, methods and annotations their delegate visits.
+     */
+    private static final class EmptyVisitor
+        extends ClassVisitor
+    {
+        static final EmptyVisitor INSTANCE = new EmptyVisitor();
+
+        private static final AnnotationVisitor ANNOTATION_VISITOR = new AnnotationVisitor( Opcodes.ASM5 )
+        {
+            public AnnotationVisitor visitAnnotation( String name, String desc )
+            {
+                return this;
+            }
+
+            public AnnotationVisitor visitArray( String name )
+            {
+                return this;
+            }
+        };
+
+        private static final FieldVisitor FIELD_VISITOR = new FieldVisitor( Opcodes.ASM5 )
+        {
+            public AnnotationVisitor visitAnnotation( String desc, boolean visible )
+            {
+                return ANNOTATION_VISITOR;
+            }
+
+            public AnnotationVisitor visitTypeAnnotation( int typeRef, TypePath typePath, String desc,
+                                                          boolean visible )
+            {
+                return ANNOTATION_VISITOR;
+            }
+        };
+
+        private static final MethodVisitor METHOD_VISITOR = new MethodVisitor( Opcodes.ASM5 )
+        {
+            public AnnotationVisitor visitAnnotationDefault()
+            {
+                return ANNOTATION_VISITOR;
+            }
+
+            public AnnotationVisitor visitAnnotation( String desc, boolean visible )
+            {
+                return ANNOTATION_VISITOR;
+            }
+
+            public AnnotationVisitor visitTypeAnnotation( int typeRef, TypePath typePath, String desc,
+                                                          boolean visible )
+            {
+                return ANNOTATION_VISITOR;
+            }
+
+            public AnnotationVisitor visitParameterAnnotation( int parameter, String desc, boolean visible )
+            {
+                return ANNOTATION_VISITOR;
+            }
+
+            public AnnotationVisitor visitInsnAnnotation( int typeRef, TypePath typePath, String desc,
+                                                          boolean visible )
+            {
+                return ANNOTATION_VISITOR;
+            }
+
+            public AnnotationVisitor visitTryCatchAnnotation( int typeRef, TypePath typePath, String desc,
+                                                              boolean visible )
+            {
+                return ANNOTATION_VISITOR;
+            }
+
+            public AnnotationVisitor visitLocalVariableAnnotation( int typeRef, TypePath typePath, Label[] start,
+                                                                   Label[] end, int[] index, String desc,
+                                                                   boolean visible )
+            {
+                return ANNOTATION_VISITOR;
+            }
+        };
+
+        private EmptyVisitor()
+        {
+            super( Opcodes.ASM5 );
+        }
+
+        public AnnotationVisitor visitAnnotation( String desc, boolean visible )
+        {
+            return ANNOTATION_VISITOR;
+        }
+
+        public AnnotationVisitor visitTypeAnnotation( int typeRef, TypePath typePath, String desc, boolean visible )
+        {
+            return ANNOTATION_VISITOR;
+        }
+
+        public FieldVisitor visitField( int access, String name, String desc, String signature, Object value )
+        {
+            return FIELD_VISITOR;
+        }
+
+        public MethodVisitor visitMethod( int access, String name, String desc, String signature,
+                                          String[] exceptions )
+        {
+            return METHOD_VISITOR;
+        }
+    }
+
+    /**
+     * Records the names of all the classes ASM maps, without changing them, and the string constants which look like
+     * class names with dots or slashes.
+     */
+    private static class CollectingRemapper
+        extends Remapper
+    {
+        private final Set<String> classes = new LinkedHashSet<String>();
+
+        private final Set<String> namedClasses = new LinkedHashSet<String>();
+
+        public String map( String typeName )
+        {
+            classes.add( typeName.replace( '/', '.' ) );
+            return typeName;
+        }
+
+        public Object mapValue( Object value )
+        {
+            if ( value instanceof String && isClassName( (String) value ) )
+            {
+                namedClasses.add( ( (String) value ).replace( '/', '.' ) );
+            }
+            return super.mapValue( value );
+        }
+
+        /**
+         * @return <code>true</code> for Java identifiers separated by dots or by slashes, at least two of them.
+         */
+        private static boolean isClassName( String value )
+        {
+            char separator = value.indexOf( '.' ) != -1 ? '.' : '/';
+            boolean start = true;
+            boolean separated = false;
+            for ( int i = 0; i < value.length(); i++ )
+            {
+                char c = value.charAt( i );
+                if ( c == separator && !start )
+                {
+                    start = true;
+                    separated = true;
+                }
+                else if ( start ? Character.isJavaIdentifierStart( c ) : Character.isJavaIdentifierPart( c ) )
+                {
+                    start = false;
+                }
+                else
+                {
+                    return false;
+                }
+            }
+            return separated && !start;
+        }
+    }
+}
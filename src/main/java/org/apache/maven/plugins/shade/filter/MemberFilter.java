@@ -0,0 +1,44 @@
+package org.apache.maven.plugins.shade.filter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * A {@link Filter} which can also remove methods and fields from the classes it lets through.
+ *
+ * @since 2.4.5
+ */
+public interface MemberFilter
+    extends Filter
+{
+    /**
+     * @param classFile the name of a class in its jar, such as <code>org/example/Foo.class</code>.
+     * @return <code>true</code> if some methods or fields of the class are to be removed.
+     */
+    boolean hasFilteredMembers( String classFile );
+
+    /**
+     * Removes methods and fields from a class. This may be called concurrently for different classes.
+     *
+     * @param classFile the name of the class in its jar, such as <code>org/example/Foo.class</code>.
+     * @param content the class file.
+     * @return the class file without the filtered members.
+     */
+    byte[] filterMembers( String classFile, byte[] content );
+}
@@ -22,20 +22,23 @@ package org.apache.maven.plugins.shade.filter;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.util.IOUtil;
-import org.vafer.jdependency.Clazz;
-import org.vafer.jdependency.Clazzpath;
-import org.vafer.jdependency.ClazzpathUnit;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.zip.ZipException;
 
 /**
@@ -44,12 +47,21 @@ import java.util.zip.ZipException;
  * @author Torsten Curdt
  */
 public class MinijarFilter
-    implements Filter
+    implements MemberFilter
 {
 
     private Log log;
 
-    private Set<Clazz> removable;
+    /**
+     * The jar entries of the removable classes, such as <code>org/example/Foo.class</code>, so that
+     * {@link #isFiltered(String)} is a single lookup of the name it is given.
+     */
+    private Set<String> removableClassFiles;
+
+    /**
+     * The members to keep, or <code>null</code> to keep all members.
+     */
+    private ReachableMembers members;
 
     private int classesKept;
 
@@ -86,36 +98,218 @@ public class MinijarFilter
     public MinijarFilter( MavenProject project, Log log, List<SimpleFilter> simpleFilters )
         throws IOException
     {
+        this( project, log, simpleFilters, new MinijarOptions() );
+    }
 
+    /**
+     * @param project {@link MavenProject}
+     * @param log {@link Log}
+     * @param simpleFilters {@link SimpleFilter}
+     * @param options {@link MinijarOptions}
+     * @throws IOException in case of errors.
+     * @since 2.4.5
+     */
+    public MinijarFilter( MavenProject project, Log log, List<SimpleFilter> simpleFilters, MinijarOptions options )
+        throws IOException
+    {
         this.log = log;
 
-        Clazzpath cp = new Clazzpath();
+        long start = System.currentTimeMillis();
+        List<Artifact> dependencies = new ArrayList<Artifact>( project.getArtifacts() );
+        ClassReferences[] jars = readJars( project.getArtifact().getFile(), dependencies, options.getThreads(),
+                                           options.getCacheDirectory() );
+        int classes = 0;
+        for ( ClassReferences jar : jars )
+        {
+            classes += jar != null ? jar.size() : 0;
+        }
+        List<File> jarFiles = new ArrayList<File>();
+        for ( int i = 0; i < jars.length; i++ )
+        {
+            if ( jars[i] != null )
+            {
+                jarFiles.add( i == 0 ? project.getArtifact().getFile() : dependencies.get( i - 1 ).getFile() );
+            }
+        }
+        ClassGraph graph = new ClassGraph( jars, options.isNamedClasses() );
+        // only the graph is kept from now on
+        jars = null;
 
-        ClazzpathUnit artifactUnit =
-            cp.addClazzpathUnit( new FileInputStream( project.getArtifact().getFile() ), project.toString() );
+        BitSet roots = options.getEntryPoints() == null ? getProjectClasses( graph )
+                        : getEntryPoints( graph, options.getEntryPoints(), options.getMainClass() );
+        BitSet kept = graph.getTransitiveDependencies( roots );
+        if ( options.isServiceProviders() )
+        {
+            keepServiceProviders( graph, dependencies.size() + 1, kept );
+        }
+        BitSet removable = graph.getClasses();
+        removePackages( graph, kept, removable );
+        removable.andNot( kept );
+        BitSet included = (BitSet) removable.clone();
+        removeSpecificallyIncludedClasses( project.getArtifact().getFile(), dependencies, graph, simpleFilters == null
+                        ? Collections.<SimpleFilter>emptyList() : simpleFilters, removable );
+        included.andNot( removable );
+
+        removableClassFiles = new HashSet<String>();
+        for ( int id = removable.nextSetBit( 0 ); id >= 0; id = removable.nextSetBit( id + 1 ) )
+        {
+            removableClassFiles.add( graph.getName( id ).replace( '.', '/' ) + ".class" );
+        }
+
+        if ( options.getKeepRules() != null && jarFiles.size() <= dependencies.size() )
+        {
+            // the code of the jars which could not be analyzed could use any member
+            log.warn( "Keeping all the methods and fields since some dependencies could not be analyzed" );
+        }
+        else if ( options.getKeepRules() != null )
+        {
+            // only the members of the dependencies are removed, and the classes which may be used through
+            // reflection keep all theirs
+            included.or( getProjectClasses( graph ) );
+            included.or( roots );
+            BitSet named = graph.getNamedClasses();
+            named.and( kept );
+            included.or( named );
+            for ( int jar = 0; jar <= dependencies.size(); jar++ )
+            {
+                int[] services = graph.getServices( jar );
+                for ( int i = 1; i < services.length; i += 2 )
+                {
+                    included.set( services[i] );
+                }
+            }
+            Set<String> rootClasses = new HashSet<String>();
+            for ( int id = included.nextSetBit( 0 ); id >= 0; id = included.nextSetBit( id + 1 ) )
+            {
+                rootClasses.add( graph.getName( id ) );
+            }
+            members = ReachableMembers.analyze( jarFiles, removableClassFiles, rootClasses, options.getKeepRules(),
+                                                options.getThreads() );
+            log.info( "Removing " + members.getRemovedMethods() + " methods and " + members.getRemovedFields()
+                + " fields from " + members.getFilteredClasses() + " classes" );
+        }
+
+        log.debug( "Analyzed " + classes + " classes of " + ( dependencies.size() + 1 ) + " jars in "
+            + ( System.currentTimeMillis() - start ) + " ms" );
+    }
+
+    /**
+     * @return the classes of the project artifact first, then those of each dependency in the same order, or
+     *         <code>null</code> for the dependencies which could not be analyzed.
+     */
+    private ClassReferences[] readJars( final File artifactFile, List<Artifact> dependencies, int threads,
+                                        final File cacheDirectory )
+        throws IOException
+    {
+        List<Callable<ClassReferences>> tasks = new ArrayList<Callable<ClassReferences>>();
+        tasks.add( new Callable<ClassReferences>()
+        {
+            public ClassReferences call()
+                throws IOException
+            {
+                // rebuilt every time, so not worth a cache file
+                return ClassReferences.read( artifactFile, cacheDirectory, false );
+            }
+        } );
+        for ( final Artifact dependency : dependencies )
+        {
+            tasks.add( new Callable<ClassReferences>()
+            {
+                public ClassReferences call()
+                    throws IOException
+                {
+                    return readDependency( dependency, cacheDirectory );
+                }
+            } );
+        }
+        List<ClassReferences> jars = call( tasks, threads );
+        return jars.toArray( new ClassReferences[jars.size()] );
+    }
 
-        for ( Artifact dependency : project.getArtifacts() )
+    /**
+     * Runs some tasks, in the calling thread when there is only one thread to use.
+     *
+     * @param tasks the tasks.
+     * @param threads the number of threads, or 0 for one per available processor.
+     * @return the results of the tasks, in the same order.
+     * @throws IOException if a task failed with an {@link IOException} or a checked exception.
+     */
+    static <T> List<T> call( List<Callable<T>> tasks, int threads )
+        throws IOException
+    {
+        List<T> results = new ArrayList<T>( tasks.size() );
+        int poolSize = Math.min( threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), tasks.size() );
+        if ( poolSize <= 1 )
         {
-            addDependencyToClasspath( cp, dependency );
+            for ( Callable<T> task : tasks )
+            {
+                FutureTask<T> future = new FutureTask<T>( task );
+                future.run();
+                results.add( get( future ) );
+            }
+            return results;
         }
 
-        removable = cp.getClazzes();
-        removePackages( artifactUnit );
-        removable.removeAll( artifactUnit.getClazzes() );
-        removable.removeAll( artifactUnit.getTransitiveDependencies() );
-        removeSpecificallyIncludedClasses( project, simpleFilters == null ? Collections.<SimpleFilter>emptyList()
-                        : simpleFilters );
+        ExecutorService executor = Executors.newFixedThreadPool( poolSize );
+        try
+        {
+            List<Future<T>> futures = new ArrayList<Future<T>>();
+            for ( Callable<T> task : tasks )
+            {
+                futures.add( executor.submit( task ) );
+            }
+            for ( Future<T> future : futures )
+            {
+                results.add( get( future ) );
+            }
+            return results;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
     }
 
-    private ClazzpathUnit addDependencyToClasspath( Clazzpath cp, Artifact dependency )
+    private static <T> T get( Future<T> future )
         throws IOException
     {
-        InputStream is = null;
-        ClazzpathUnit clazzpathUnit = null;
         try
         {
-            is = new FileInputStream( dependency.getFile() );
-            clazzpathUnit = cp.addClazzpathUnit( is, dependency.toString() );
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while analyzing class dependencies" );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            IOException ioe = new IOException( cause.getMessage() );
+            ioe.initCause( cause );
+            throw ioe;
+        }
+    }
+
+    private ClassReferences readDependency( Artifact dependency, File cacheDirectory )
+        throws IOException
+    {
+        try
+        {
+            // a snapshot, such as another module of the reactor, may change on every build
+            return ClassReferences.read( dependency.getFile(), cacheDirectory, !dependency.isSnapshot() );
         }
         catch ( ZipException e )
         {
@@ -131,69 +325,188 @@ public class MinijarFilter
             // trap ArrayIndexOutOfBoundsExceptions caused by malformed dependency classes (MSHADE-107)
             log.warn( dependency.toString()
                 + " could not be analyzed for minimization; dependency is probably malformed." );
+            return null;
         }
-        finally
+    }
+
+    private static BitSet getProjectClasses( ClassGraph graph )
+    {
+        BitSet roots = new BitSet();
+        for ( int id : graph.getJarClasses( 0 ) )
         {
-            IOUtil.close( is );
+            roots.set( id );
         }
+        return roots;
+    }
 
-        return clazzpathUnit;
+    private BitSet getEntryPoints( ClassGraph graph, Collection<String> entryPoints, String mainClass )
+    {
+        BitSet roots = new BitSet();
+        List<String> names = new ArrayList<String>( entryPoints );
+        if ( mainClass != null )
+        {
+            // the Main-Class of the shaded manifest replaces that of the project's
+            names.add( mainClass );
+        }
+        else if ( graph.getMainClass( 0 ) != -1 )
+        {
+            roots.set( graph.getMainClass( 0 ) );
+        }
+        int[] services = graph.getServices( 0 );
+        for ( int i = 1; i < services.length; i += 2 )
+        {
+            roots.set( services[i] );
+        }
+
+        BitSet classes = graph.getClasses();
+        for ( String entryPoint : names )
+        {
+            boolean found = false;
+            if ( entryPoint.endsWith( "*" ) )
+            {
+                for ( int id = classes.nextSetBit( 0 ); id >= 0; id = classes.nextSetBit( id + 1 ) )
+                {
+                    if ( matches( entryPoint, graph.getName( id ) ) )
+                    {
+                        roots.set( id );
+                        found = true;
+                    }
+                }
+            }
+            else
+            {
+                int id = graph.getId( entryPoint );
+                if ( id != -1 && classes.get( id ) )
+                {
+                    roots.set( id );
+                    found = true;
+                }
+            }
+            if ( !found )
+            {
+                log.warn( "No class found for the entry point " + entryPoint );
+            }
+        }
+
+        log.info( "Keeping the classes reachable from " + roots.cardinality() + " entry points" );
+        return roots;
     }
 
-    private void removePackages( ClazzpathUnit artifactUnit )
+    /**
+     * @param pattern a class name such as <code>org.example.Main</code>, or <code>org.example.api.*</code> for the
+     *            classes of a package, or <code>org.example.api.**</code> for those of its subpackages too.
+     * @param className a class name.
+     * @return <code>true</code> if the pattern matches the class.
+     */
+    static boolean matches( String pattern, String className )
     {
-        Set<String> packageNames = new HashSet<String>();
-        removePackages( artifactUnit.getClazzes(), packageNames );
-        removePackages( artifactUnit.getTransitiveDependencies(), packageNames );
+        if ( pattern.endsWith( ".**" ) )
+        {
+            return className.startsWith( pattern.substring( 0, pattern.length() - 2 ) );
+        }
+        if ( pattern.endsWith( ".*" ) )
+        {
+            String prefix = pattern.substring( 0, pattern.length() - 1 );
+            return className.startsWith( prefix ) && className.indexOf( '.', prefix.length() ) == -1;
+        }
+        return pattern.equals( className );
     }
 
-    @SuppressWarnings( "rawtypes" )
-    private void removePackages( Set clazzes, Set<String> packageNames )
+    /**
+     * Adds the service providers registered by the jars for a service type which is kept or not in the jars, and what
+     * they need, until no more are found.
+     */
+    private void keepServiceProviders( ClassGraph graph, int jars, BitSet kept )
     {
-        for ( Object clazze : clazzes )
+        BitSet classes = graph.getClasses();
+        int count = 0;
+        while ( true )
         {
-            Clazz clazz = (Clazz) clazze;
-            String name = clazz.getName();
+            BitSet providers = new BitSet();
+            for ( int jar = 0; jar < jars; jar++ )
+            {
+                int[] services = graph.getServices( jar );
+                for ( int i = 0; i < services.length; i += 2 )
+                {
+                    int type = services[i];
+                    int provider = services[i + 1];
+                    if ( !kept.get( provider ) && ( kept.get( type ) || !classes.get( type ) ) )
+                    {
+                        providers.set( provider );
+                    }
+                }
+            }
+            if ( providers.isEmpty() )
+            {
+                break;
+            }
+            count += providers.cardinality();
+            graph.addTransitiveDependencies( kept, providers );
+        }
+        if ( count > 0 )
+        {
+            log.info( "Keeping " + count + " service providers registered in META-INF/services" );
+        }
+    }
+
+    private static void removePackages( ClassGraph graph, BitSet classes, BitSet removable )
+    {
+        Set<String> packageNames = new HashSet<String>();
+        for ( int id = classes.nextSetBit( 0 ); id >= 0; id = classes.nextSetBit( id + 1 ) )
+        {
+            String name = graph.getName( id );
             while ( name.contains( "." ) )
             {
                 name = name.substring( 0, name.lastIndexOf( '.' ) );
                 if ( packageNames.add( name ) )
                 {
-                    removable.remove( new Clazz( name + ".package-info" ) );
+                    int packageInfo = graph.getId( name + ".package-info" );
+                    if ( packageInfo != -1 )
+                    {
+                        removable.clear( packageInfo );
+                    }
                 }
             }
         }
     }
 
-    private void removeSpecificallyIncludedClasses( MavenProject project, List<SimpleFilter> simpleFilters )
-        throws IOException
+    private void removeSpecificallyIncludedClasses( File artifactFile, List<Artifact> dependencies, ClassGraph graph,
+                                                    List<SimpleFilter> simpleFilters, BitSet removable )
     {
-        // remove classes specifically included in filters
-        Clazzpath checkCp = new Clazzpath();
-        for ( Artifact dependency : project.getArtifacts() )
+        // remove classes specifically included in filters, looking at each class once with the filters of its jar;
+        // the project's classes too, which are removed when they are not reached from the entry points
+        List<SimpleFilter> jarFilters = new ArrayList<SimpleFilter>();
+        for ( int i = 0; i <= dependencies.size(); i++ )
         {
-            File jar = dependency.getFile();
-
+            File jar = i == 0 ? artifactFile : dependencies.get( i - 1 ).getFile();
+            jarFilters.clear();
             for ( SimpleFilter simpleFilter : simpleFilters )
             {
                 if ( simpleFilter.canFilter( jar ) )
                 {
-                    ClazzpathUnit depClazzpathUnit = addDependencyToClasspath( checkCp, dependency );
-                    if ( depClazzpathUnit != null )
+                    jarFilters.add( simpleFilter );
+                }
+            }
+            if ( jarFilters.isEmpty() )
+            {
+                continue;
+            }
+
+            for ( int id : graph.getJarClasses( i ) )
+            {
+                if ( !removable.get( id ) )
+                {
+                    continue;
+                }
+                String name = graph.getName( id );
+                String path = name.replace( '.', '/' );
+                for ( SimpleFilter simpleFilter : jarFilters )
+                {
+                    if ( simpleFilter.isSpecificallyIncluded( path ) )
                     {
-                        Set<Clazz> clazzes = depClazzpathUnit.getClazzes();
-                        Iterator<Clazz> j = removable.iterator();
-                        while ( j.hasNext() )
-                        {
-                            Clazz clazz = j.next();
-
-                            if ( clazzes.contains( clazz ) //
-                                && simpleFilter.isSpecificallyIncluded( clazz.getName().replace( '.', '/' ) ) )
-                            {
-                                log.info( clazz.getName() + " not removed because it was specifically included" );
-                                j.remove();
-                            }
-                        }
+                        log.info( name + " not removed because it was specifically included" );
+                        removable.clear( id );
+                        break;
                     }
                 }
             }
@@ -209,12 +522,14 @@ public class MinijarFilter
     /** {@inheritDoc} */
     public boolean isFiltered( String classFile )
     {
-        String className = classFile.replace( '/', '.' ).replaceFirst( "\\.class$", "" );
-        Clazz clazz = new Clazz( className );
-
-        if ( removable.contains( clazz ) )
+        if ( removableClassFiles.contains( classFile ) )
         {
-            log.debug( "Removing " + className );
+            if ( log.isDebugEnabled() )
+            {
+                // CHECKSTYLE_OFF: MagicNumber
+                log.debug( "Removing " + classFile.substring( 0, classFile.length() - 6 ).replace( '/', '.' ) );
+                // CHECKSTYLE_ON: MagicNumber
+            }
             classesRemoved += 1;
             return true;
         }
@@ -223,6 +538,18 @@ public class MinijarFilter
         return false;
     }
 
+    /** {@inheritDoc} */
+    public boolean hasFilteredMembers( String classFile )
+    {
+        return members != null && members.hasFilteredMembers( classFile );
+    }
+
+    /** {@inheritDoc} */
+    public byte[] filterMembers( String classFile, byte[] content )
+    {
+        return members != null ? members.filterMembers( classFile, content ) : content;
+    }
+
     /** {@inheritDoc} */
     public void finished()
     {
@@ -0,0 +1,161 @@
+package org.apache.maven.plugins.shade.filter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * Parameter object used to pass the options of {@link MinijarFilter} beyond the project and its filters. The
+ * defaults keep all the classes of the project with what they need, reading all jars on the calling thread.
+ *
+ * @since 2.4.5
+ */
+public class MinijarOptions
+{
+    private int threads = 1;
+
+    private File cacheDirectory;
+
+    private Collection<String> entryPoints;
+
+    private String mainClass;
+
+    private Collection<String> keepRules;
+
+    private boolean serviceProviders;
+
+    private boolean namedClasses;
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * The number of threads reading the classes of the jars, or 0 for one per available processor.
+     *
+     * @param threads
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = threads;
+    }
+
+    public File getCacheDirectory()
+    {
+        return cacheDirectory;
+    }
+
+    /**
+     * The directory where the classes of each jar and the classes they refer to are kept for the next builds, keyed
+     * by the content of the jar, or <code>null</code> to read all jars every time.
+     *
+     * @param cacheDirectory
+     */
+    public void setCacheDirectory( File cacheDirectory )
+    {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public Collection<String> getEntryPoints()
+    {
+        return entryPoints;
+    }
+
+    /**
+     * <code>null</code> to keep all the classes of the project and what they need, otherwise the classes to keep with
+     * what they need, besides the main class and the service providers the project registers. Each one is a class
+     * name such as <code>org.example.Main</code>, or <code>org.example.api.*</code> for the classes of a package, or
+     * <code>org.example.api.**</code> for those of its subpackages too.
+     *
+     * @param entryPoints
+     */
+    public void setEntryPoints( Collection<String> entryPoints )
+    {
+        this.entryPoints = entryPoints;
+    }
+
+    public String getMainClass()
+    {
+        return mainClass;
+    }
+
+    /**
+     * The Main-Class of the shaded manifest, kept with the entry points instead of the Main-Class of the project's
+     * manifest, or <code>null</code> to keep the latter.
+     *
+     * @param mainClass
+     */
+    public void setMainClass( String mainClass )
+    {
+        this.mainClass = mainClass;
+    }
+
+    public Collection<String> getKeepRules()
+    {
+        return keepRules;
+    }
+
+    /**
+     * <code>null</code> to keep all the methods and fields of the kept classes, otherwise the methods and fields of
+     * the dependencies to keep besides those which can be reached, for instance because they are only used through
+     * reflection. Each one is a class pattern as for the entry points, followed by <code>#</code> and a member name,
+     * or <code>#*</code> or nothing for all members.
+     *
+     * @param keepRules
+     */
+    public void setKeepRules( Collection<String> keepRules )
+    {
+        this.keepRules = keepRules;
+    }
+
+    public boolean isServiceProviders()
+    {
+        return serviceProviders;
+    }
+
+    /**
+     * Whether to keep the service providers registered in <code>META-INF/services</code> by any jar, with what they
+     * need, when their service type is kept or is not in the jars, as <code>ServiceLoader</code> finds them at runtime.
+     *
+     * @param serviceProviders
+     */
+    public void setServiceProviders( boolean serviceProviders )
+    {
+        this.serviceProviders = serviceProviders;
+    }
+
+    public boolean isNamedClasses()
+    {
+        return namedClasses;
+    }
+
+    /**
+     * Whether to keep the classes whose names are string constants of the classes kept, as they may be loaded with
+     * <code>Class.forName</code>.
+     *
+     * @param namedClasses
+     */
+    public void setNamedClasses( boolean namedClasses )
+    {
+        this.namedClasses = namedClasses;
+    }
+}
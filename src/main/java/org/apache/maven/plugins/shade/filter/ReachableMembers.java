@@ -0,0 +1,650 @@
+package org.apache.maven.plugins.shade.filter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.codehaus.plexus.util.IOUtil;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+/**
+ * Finds the methods and fields of the kept classes which can be reached, and removes the others from the classes.
+ * <p/>
+ * Members are matched by name and descriptor only, whatever class they are used through, so that a call reaches
+ * every method it may dispatch to. A method is reached when it is called or referred to by a reached method, and
+ * a field when a reached method reads or writes it. The starting points are:
+ * <ul>
+ * <li>all the members of the root classes, of annotation types and of the classes matched by a keep rule without a
+ * member name,</li>
+ * <li>the members named by keep rules, static initializers, the serialization members of serializable classes and
+ * the <code>values</code> and <code>valueOf</code> methods of enums,</li>
+ * <li>the methods which may override a method of a class outside the jars, such as <code>toString()</code> or
+ * <code>Runnable.run()</code>, since code outside the jars can call them. When such a class cannot be looked up in the
+ * JDK, all the methods which could override one of its methods are kept.</li>
+ * </ul>
+ * Keep rules are class names, <code>org.example.api.*</code> for the classes of a package or
+ * <code>org.example.api.**</code> for those of its subpackages too, optionally followed by <code>#</code> and a member
+ * name, or <code>#*</code> for all members.
+ */
+final class ReachableMembers
+{
+    private static final Set<String> SERIALIZATION_METHODS =
+        new HashSet<String>( Arrays.asList( "writeObject", "readObject", "readObjectNoData", "writeReplace",
+                                            "readResolve" ) );
+
+    /**
+     * Stands for the methods of a class outside the jars which could not be looked up: any method may override one.
+     */
+    private static final Set<String> UNKNOWN = Collections.unmodifiableSet( new HashSet<String>() );
+
+    private final Map<String, List<ClassInfo>> classes = new HashMap<String, List<ClassInfo>>();
+
+    private final Map<String, List<Member>> methodsByKey = new HashMap<String, List<Member>>();
+
+    private final Map<String, List<Member>> fieldsByKey = new HashMap<String, List<Member>>();
+
+    private final Set<String> reachedMethods = new HashSet<String>();
+
+    private final Set<String> reachedFields = new HashSet<String>();
+
+    private final List<Member> pending = new ArrayList<Member>();
+
+    /**
+     * The keys of the methods which may be called from outside the jars, by class name.
+     */
+    private final Map<String, Set<String>> externalMethods = new HashMap<String, Set<String>>();
+
+    /**
+     * The keys of the members to keep, by jar entry of the classes which lose some members.
+     */
+    private final Map<String, Set<String>> keptMembers = new HashMap<String, Set<String>>();
+
+    private int removedMethods;
+
+    private int removedFields;
+
+    private ReachableMembers()
+    {
+    }
+
+    /**
+     * @param jars the jars.
+     * @param removableClassFiles the jar entries of the classes which are removed anyway, not to be read.
+     * @param rootClasses the names of the classes whose members are all kept, such as <code>org.example.Foo</code>.
+     * @param keepRules the keep rules.
+     * @param threads the number of threads reading the jars.
+     * @return the members to keep.
+     * @throws IOException if a jar cannot be read.
+     * @throws RuntimeException if a class is malformed.
+     */
+    static ReachableMembers analyze( List<File> jars, final Set<String> removableClassFiles, Set<String> rootClasses,
+                                     Collection<String> keepRules, int threads )
+        throws IOException
+    {
+        List<Callable<List<ClassInfo>>> tasks = new ArrayList<Callable<List<ClassInfo>>>();
+        for ( final File jar : jars )
+        {
+            tasks.add( new Callable<List<ClassInfo>>()
+            {
+                public List<ClassInfo> call()
+                    throws IOException
+                {
+                    return read( jar, removableClassFiles );
+                }
+            } );
+        }
+
+        ReachableMembers members = new ReachableMembers();
+        for ( List<ClassInfo> jarClasses : MinijarFilter.call( tasks, threads ) )
+        {
+            for ( ClassInfo classInfo : jarClasses )
+            {
+                members.add( classInfo );
+            }
+        }
+        members.reach( rootClasses, keepRules );
+        members.collectKeptMembers();
+        return members;
+    }
+
+    private static List<ClassInfo> read( File jar, Set<String> removableClassFiles )
+        throws IOException
+    {
+        List<ClassInfo> classes = new ArrayList<ClassInfo>();
+        JarInputStream in = new JarInputStream( new BufferedInputStream( new FileInputStream( jar ) ) );
+        try
+        {
+            for ( JarEntry entry = in.getNextJarEntry(); entry != null; entry = in.getNextJarEntry() )
+            {
+                String name = entry.getName();
+                if ( name.endsWith( ".class" ) && !removableClassFiles.contains( name ) )
+                {
+                    ClassInfo classInfo = new ClassInfo();
+                    new ClassReader( in ).accept( new Collector( classInfo ),
+                                                  ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES );
+                    classes.add( classInfo );
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        return classes;
+    }
+
+    private void add( ClassInfo classInfo )
+    {
+        List<ClassInfo> versions = classes.get( classInfo.name );
+        if ( versions == null )
+        {
+            versions = new ArrayList<ClassInfo>( 1 );
+            classes.put( classInfo.name, versions );
+        }
+        versions.add( classInfo );
+        for ( Member method : classInfo.methods )
+        {
+            index( methodsByKey, method );
+        }
+        for ( Member field : classInfo.fields )
+        {
+            index( fieldsByKey, field );
+        }
+    }
+
+    private static void index( Map<String, List<Member>> members, Member member )
+    {
+        String key = member.getKey();
+        List<Member> list = members.get( key );
+        if ( list == null )
+        {
+            list = new ArrayList<Member>( 1 );
+            members.put( key, list );
+        }
+        list.add( member );
+    }
+
+    private void reach( Set<String> rootClasses, Collection<String> keepRules )
+    {
+        for ( List<ClassInfo> versions : classes.values() )
+        {
+            for ( ClassInfo classInfo : versions )
+            {
+                String className = classInfo.name.replace( '/', '.' );
+                boolean all = rootClasses.contains( className ) || ( classInfo.access & Opcodes.ACC_ANNOTATION ) != 0;
+                Set<String> keptNames = new HashSet<String>();
+                for ( String keepRule : keepRules )
+                {
+                    int hash = keepRule.indexOf( '#' );
+                    if ( MinijarFilter.matches( hash != -1 ? keepRule.substring( 0, hash ) : keepRule, className ) )
+                    {
+                        String member = hash != -1 ? keepRule.substring( hash + 1 ) : "*";
+                        all |= "*".equals( member );
+                        keptNames.add( member );
+                    }
+                }
+                boolean serializable = isSerializable( classInfo.name );
+                boolean isEnum = ( classInfo.access & Opcodes.ACC_ENUM ) != 0;
+
+                for ( Member field : classInfo.fields )
+                {
+                    if ( all || serializable || keptNames.contains( field.name ) )
+                    {
+                        field.kept = true;
+                    }
+                }
+                for ( Member method : classInfo.methods )
+                {
+                    if ( all || keptNames.contains( method.name ) || "<clinit>".equals( method.name )
+                        || ( serializable && SERIALIZATION_METHODS.contains( method.name ) )
+                        || ( isEnum && ( "values".equals( method.name ) || "valueOf".equals( method.name ) ) )
+                        || overridesExternalMethod( classInfo, method ) )
+                    {
+                        keep( method );
+                    }
+                }
+            }
+        }
+
+        while ( !pending.isEmpty() )
+        {
+            Member method = pending.remove( pending.size() - 1 );
+            for ( String key : method.methodReferences )
+            {
+                if ( reachedMethods.add( key ) && methodsByKey.containsKey( key ) )
+                {
+                    for ( Member reached : methodsByKey.get( key ) )
+                    {
+                        keep( reached );
+                    }
+                }
+            }
+            for ( String key : method.fieldReferences )
+            {
+                if ( reachedFields.add( key ) && fieldsByKey.containsKey( key ) )
+                {
+                    for ( Member reached : fieldsByKey.get( key ) )
+                    {
+                        reached.kept = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void keep( Member method )
+    {
+        if ( !method.kept )
+        {
+            method.kept = true;
+            pending.add( method );
+        }
+    }
+
+    private boolean overridesExternalMethod( ClassInfo classInfo, Member method )
+    {
+        if ( ( method.access & ( Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE ) ) != 0 || method.name.startsWith( "<" ) )
+        {
+            return false;
+        }
+        Set<String> external = getExternalMethods( classInfo.name );
+        return external == UNKNOWN || external.contains( method.getKey() );
+    }
+
+    /**
+     * @return the keys of the methods of the classes outside the jars a class extends or implements, or
+     *         {@link #UNKNOWN}.
+     */
+    private Set<String> getExternalMethods( String className )
+    {
+        Set<String> methods = externalMethods.get( className );
+        if ( methods != null )
+        {
+            return methods;
+        }
+
+        List<ClassInfo> versions = classes.get( className );
+        if ( versions == null )
+        {
+            methods = getJdkMethods( className );
+        }
+        else
+        {
+            methods = new HashSet<String>();
+            for ( ClassInfo classInfo : versions )
+            {
+                List<String> supertypes = new ArrayList<String>( Arrays.asList( classInfo.interfaces ) );
+                if ( classInfo.superName != null )
+                {
+                    supertypes.add( classInfo.superName );
+                }
+                for ( String supertype : supertypes )
+                {
+                    Set<String> inherited = getExternalMethods( supertype );
+                    if ( inherited == UNKNOWN )
+                    {
+                        methods = UNKNOWN;
+                        break;
+                    }
+                    methods.addAll( inherited );
+                }
+                if ( methods == UNKNOWN )
+                {
+                    break;
+                }
+            }
+        }
+        externalMethods.put( className, methods );
+        return methods;
+    }
+
+    /**
+     * Looks up a class of the JDK, leaving aside the classes of Maven and of the plugin.
+     */
+    private static Set<String> getJdkMethods( String className )
+    {
+        try
+        {
+            Class<?> type = Class.forName( className.replace( '/', '.' ), false,
+                                           ClassLoader.getSystemClassLoader().getParent() );
+            Set<String> methods = new HashSet<String>();
+            List<Class<?>> types = new ArrayList<Class<?>>();
+            types.add( type );
+            for ( int i = 0; i < types.size(); i++ )
+            {
+                Class<?> t = types.get( i );
+                for ( Method method : t.getDeclaredMethods() )
+                {
+                    methods.add( method.getName() + Type.getMethodDescriptor( method ) );
+                }
+                if ( t.getSuperclass() != null )
+                {
+                    types.add( t.getSuperclass() );
+                }
+                types.addAll( Arrays.asList( t.getInterfaces() ) );
+            }
+            return methods;
+        }
+        catch ( ClassNotFoundException e )
+        {
+            return UNKNOWN;
+        }
+        catch ( LinkageError e )
+        {
+            return UNKNOWN;
+        }
+        catch ( SecurityException e )
+        {
+            return UNKNOWN;
+        }
+    }
+
+    private boolean isSerializable( String className )
+    {
+        List<ClassInfo> versions = classes.get( className );
+        if ( versions == null )
+        {
+            try
+            {
+                Class<?> type = Class.forName( className.replace( '/', '.' ), false,
+                                               ClassLoader.getSystemClassLoader().getParent() );
+                return java.io.Serializable.class.isAssignableFrom( type );
+            }
+            catch ( ClassNotFoundException e )
+            {
+                // cannot tell
+                return true;
+            }
+            catch ( LinkageError e )
+            {
+                return true;
+            }
+        }
+        for ( ClassInfo classInfo : versions )
+        {
+            for ( String supertype : classInfo.interfaces )
+            {
+                if ( isSerializable( supertype ) )
+                {
+                    return true;
+                }
+            }
+            if ( classInfo.superName != null && isSerializable( classInfo.superName ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collectKeptMembers()
+    {
+        for ( Map.Entry<String, List<ClassInfo>> entry : classes.entrySet() )
+        {
+            Set<String> kept = new HashSet<String>();
+            Set<String> methods = new HashSet<String>();
+            Set<String> fields = new HashSet<String>();
+            for ( ClassInfo classInfo : entry.getValue() )
+            {
+                collect( classInfo.methods, kept, methods );
+                collect( classInfo.fields, kept, fields );
+            }
+            methods.removeAll( kept );
+            fields.removeAll( kept );
+            if ( !methods.isEmpty() || !fields.isEmpty() )
+            {
+                keptMembers.put( entry.getKey() + ".class", kept );
+                removedMethods += methods.size();
+                removedFields += fields.size();
+            }
+        }
+    }
+
+    private static void collect( List<Member> members, Set<String> kept, Set<String> all )
+    {
+        for ( Member member : members )
+        {
+            all.add( member.getKey() );
+            if ( member.kept )
+            {
+                kept.add( member.getKey() );
+            }
+        }
+    }
+
+    /**
+     * @return the number of methods removed.
+     */
+    int getRemovedMethods()
+    {
+        return removedMethods;
+    }
+
+    /**
+     * @return the number of fields removed.
+     */
+    int getRemovedFields()
+    {
+        return removedFields;
+    }
+
+    /**
+     * @return the number of classes which lose some members.
+     */
+    int getFilteredClasses()
+    {
+        return keptMembers.size();
+    }
+
+    /**
+     * @see MemberFilter#hasFilteredMembers(String)
+     */
+    boolean hasFilteredMembers( String classFile )
+    {
+        return keptMembers.containsKey( classFile );
+    }
+
+    /**
+     * @see MemberFilter#filterMembers(String, byte[])
+     */
+    byte[] filterMembers( String classFile, byte[] content )
+    {
+        final Set<String> kept = keptMembers.get( classFile );
+        if ( kept == null )
+        {
+            return content;
+        }
+
+        ClassWriter cw = new ClassWriter( 0 );
+        new ClassReader( content ).accept( new ClassVisitor( Opcodes.ASM5, cw )
+        {
+            public FieldVisitor visitField( int access, String name, String desc, String signature, Object value )
+            {
+                return kept.contains( name + desc ) ? super.visitField( access, name, desc, signature, value ) : null;
+            }
+
+            public MethodVisitor visitMethod( int access, String name, String desc, String signature,
+                                              String[] exceptions )
+            {
+                return kept.contains( name + desc ) ? super.visitMethod( access, name, desc, signature, exceptions )
+                                : null;
+            }
+        }, 0 );
+        return cw.toByteArray();
+    }
+
+    private static final class ClassInfo
+    {
+        private String name;
+
+        private String superName;
+
+        private String[] interfaces;
+
+        private int access;
+
+        private final List<Member> methods = new ArrayList<Member>();
+
+        private final List<Member> fields = new ArrayList<Member>();
+    }
+
+    private static final class Member
+    {
+        private final String name;
+
+        private final String desc;
+
+        private final int access;
+
+        /**
+         * The keys of the methods and fields a method uses, empty for fields.
+         */
+        private final Set<String> methodReferences = new HashSet<String>();
+
+        private final Set<String> fieldReferences = new HashSet<String>();
+
+        private boolean kept;
+
+        private Member( String name, String desc, int access )
+        {
+            this.name = name;
+            this.desc = desc;
+            this.access = access;
+        }
+
+        /**
+         * @return the name and the descriptor, which tell methods and fields apart as only the descriptors of methods
+         *         start with a parenthesis.
+         */
+        String getKey()
+        {
+            return name + desc;
+        }
+    }
+
+    /**
+     * Collects the members of a class and what their code uses.
+     */
+    private static final class Collector
+        extends ClassVisitor
+    {
+        private final ClassInfo classInfo;
+
+        private Collector( ClassInfo classInfo )
+        {
+            super( Opcodes.ASM5 );
+            this.classInfo = classInfo;
+        }
+
+        public void visit( int version, int access, String name, String signature, String superName,
+                           String[] interfaces )
+        {
+            classInfo.name = name;
+            classInfo.access = access;
+            classInfo.superName = superName;
+            classInfo.interfaces = interfaces != null ? interfaces : new String[0];
+        }
+
+        public FieldVisitor visitField( int access, String name, String desc, String signature, Object value )
+        {
+            classInfo.fields.add( new Member( name, desc, access ) );
+            return null;
+        }
+
+        public MethodVisitor visitMethod( int access, String name, String desc, String signature,
+                                          String[] exceptions )
+        {
+            final Member method = new Member( name, desc, access );
+            classInfo.methods.add( method );
+            return new MethodVisitor( Opcodes.ASM5 )
+            {
+                public void visitFieldInsn( int opcode, String owner, String name, String desc )
+                {
+                    method.fieldReferences.add( name + desc );
+                }
+
+                public void visitMethodInsn( int opcode, String owner, String name, String desc, boolean itf )
+                {
+                    method.methodReferences.add( name + desc );
+                }
+
+                public void visitInvokeDynamicInsn( String name, String desc, Handle bsm, Object... bsmArgs )
+                {
+                    add( bsm );
+                    for ( Object bsmArg : bsmArgs )
+                    {
+                        if ( bsmArg instanceof Handle )
+                        {
+                            add( (Handle) bsmArg );
+                        }
+                        else if ( bsmArg instanceof Type && ( (Type) bsmArg ).getSort() == Type.METHOD )
+                        {
+                            // the method a lambda implements, such as run()V for a Runnable
+                            method.methodReferences.add( name + ( (Type) bsmArg ).getDescriptor() );
+                        }
+                    }
+                }
+
+                public void visitLdcInsn( Object cst )
+                {
+                    if ( cst instanceof Handle )
+                    {
+                        add( (Handle) cst );
+                    }
+                }
+
+                private void add( Handle handle )
+                {
+                    if ( handle.getTag() <= Opcodes.H_PUTSTATIC )
+                    {
+                        method.fieldReferences.add( handle.getName() + handle.getDesc() );
+                    }
+                    else
+                    {
+                        method.methodReferences.add( handle.getName() + handle.getDesc() );
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package org.apache.maven.plugins.shade.mojo;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Remembers the last successful shading of an execution: a fingerprint of the configuration, the input files, copies
+ * of the shaded files and the dependency reduced POM. When neither the configuration nor the inputs changed, the
+ * copies can be restored instead of shading again.
+ * <p/>
+ * Inputs are compared by length and modification time first, and by SHA-1 when these differ, since the project's
+ * own jar is usually packaged again with the same content. An input which shading replaces may also still be the
+ * shaded file which replaced it, when it was not packaged again.
+ */
+class ShadeBuildState
+{
+    private static final String STATE_FILE = "state.properties";
+
+    private static final String FINGERPRINT = "fingerprint";
+
+    private static final String INPUTS = "inputs";
+
+    private static final String OUTPUTS = "outputs";
+
+    private static final String DEPENDENCY_REDUCED_POM = "dependencyReducedPom";
+
+    private final File directory;
+
+    private final String fingerprint;
+
+    private final List<File> inputs;
+
+    private final Map<File, File> replacedInputs;
+
+    private final Properties state = new Properties();
+
+    /**
+     * @param directory where the state and the copies of the shaded files are kept.
+     * @param fingerprint describes everything but the input files that the output depends on.
+     * @param inputs the input files, in the order they are shaded.
+     * @param replacedInputs the output replacing each input which shading replaces, such as the project's artifact.
+     */
+    ShadeBuildState( File directory, String fingerprint, Collection<File> inputs, Map<File, File> replacedInputs )
+    {
+        this.directory = directory;
+        this.fingerprint = sha1( fingerprint );
+        this.inputs = new ArrayList<File>( inputs );
+        this.replacedInputs = Collections.unmodifiableMap( replacedInputs );
+    }
+
+    /**
+     * @param outputs the files shading would create.
+     * @return <code>true</code> if the last shading had the same configuration and inputs, and copies of all the
+     *         outputs are still there.
+     */
+    boolean isUpToDate( List<File> outputs )
+        throws IOException
+    {
+        Properties previous = load();
+        if ( previous == null || !fingerprint.equals( previous.getProperty( FINGERPRINT ) )
+            || !String.valueOf( inputs.size() ).equals( previous.getProperty( INPUTS ) )
+            || !String.valueOf( outputs.size() ).equals( previous.getProperty( OUTPUTS ) ) )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < outputs.size(); i++ )
+        {
+            if ( !outputs.get( i ).getAbsolutePath().equals( previous.getProperty( "output." + i + ".path" ) )
+                || !copy( i ).isFile() )
+            {
+                return false;
+            }
+        }
+
+        for ( int i = 0; i < inputs.size(); i++ )
+        {
+            File input = inputs.get( i );
+            if ( !input.getAbsolutePath().equals( previous.getProperty( "input." + i + ".path" ) ) )
+            {
+                return false;
+            }
+            String length = String.valueOf( input.length() );
+            String modified = String.valueOf( input.lastModified() );
+            if ( !length.equals( previous.getProperty( "input." + i + ".length" ) )
+                || !modified.equals( previous.getProperty( "input." + i + ".modified" ) ) )
+            {
+                String sha1 = sha1( input );
+                if ( !sha1.equals( previous.getProperty( "input." + i + ".sha1" ) )
+                    && !isStillReplaced( previous, input, sha1, outputs ) )
+                {
+                    return false;
+                }
+                previous.setProperty( "input." + i + ".length", length );
+                previous.setProperty( "input." + i + ".modified", modified );
+            }
+        }
+
+        state.putAll( previous );
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the input is the file the last shading replaced it with, as the project's artifact
+     *         is when it was not packaged again.
+     */
+    private boolean isStillReplaced( Properties previous, File input, String sha1, List<File> outputs )
+    {
+        File output = replacedInputs.get( input );
+        int index = output != null ? outputs.indexOf( output ) : -1;
+        return index != -1 && sha1.equals( previous.getProperty( "output." + index + ".sha1" ) );
+    }
+
+    /**
+     * Copies the shaded files of the last shading back to where shading would create them.
+     *
+     * @param outputs the same files as given to {@link #isUpToDate(List)}.
+     */
+    void restore( List<File> outputs )
+        throws IOException
+    {
+        for ( int i = 0; i < outputs.size(); i++ )
+        {
+            FileUtils.copyFile( copy( i ), outputs.get( i ) );
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the last shading wrote a dependency reduced POM.
+     */
+    boolean hasDependencyReducedPom()
+    {
+        return state.getProperty( DEPENDENCY_REDUCED_POM + ".path" ) != null;
+    }
+
+    /**
+     * @return the dependency reduced POM written by the last shading if it is still unchanged, or <code>null</code>.
+     */
+    File getDependencyReducedPom()
+        throws IOException
+    {
+        String path = state.getProperty( DEPENDENCY_REDUCED_POM + ".path" );
+        if ( path == null )
+        {
+            return null;
+        }
+        File pom = new File( path );
+        return pom.isFile() && sha1( pom ).equals( state.getProperty( DEPENDENCY_REDUCED_POM + ".sha1" ) ) ? pom
+                        : null;
+    }
+
+    /**
+     * Forgets the last shading, so that a failure from here on does not leave a state describing other outputs.
+     */
+    void invalidate()
+    {
+        state.clear();
+        // noinspection ResultOfMethodCallIgnored
+        new File( directory, STATE_FILE ).delete();
+    }
+
+    /**
+     * Keeps copies of freshly shaded files, before they are moved to their final place.
+     *
+     * @param outputs the shaded files.
+     */
+    void save( List<File> outputs )
+        throws IOException
+    {
+        for ( int i = 0; i < outputs.size(); i++ )
+        {
+            FileUtils.copyFile( outputs.get( i ), copy( i ) );
+            state.setProperty( "output." + i + ".path", outputs.get( i ).getAbsolutePath() );
+            state.setProperty( "output." + i + ".sha1", sha1( outputs.get( i ) ) );
+        }
+        state.setProperty( OUTPUTS, String.valueOf( outputs.size() ) );
+    }
+
+    /**
+     * Records the input files as they are before shading, which may replace one of them.
+     */
+    void recordInputs()
+        throws IOException
+    {
+        state.setProperty( INPUTS, String.valueOf( inputs.size() ) );
+        for ( int i = 0; i < inputs.size(); i++ )
+        {
+            File input = inputs.get( i );
+            state.setProperty( "input." + i + ".path", input.getAbsolutePath() );
+            state.setProperty( "input." + i + ".length", String.valueOf( input.length() ) );
+            state.setProperty( "input." + i + ".modified", String.valueOf( input.lastModified() ) );
+            state.setProperty( "input." + i + ".sha1", sha1( input ) );
+        }
+    }
+
+    /**
+     * Records the state once the execution succeeded.
+     *
+     * @param dependencyReducedPom the dependency reduced POM in use, or <code>null</code> if there is none.
+     */
+    void commit( File dependencyReducedPom )
+        throws IOException
+    {
+        state.setProperty( FINGERPRINT, fingerprint );
+
+        state.remove( DEPENDENCY_REDUCED_POM + ".path" );
+        state.remove( DEPENDENCY_REDUCED_POM + ".sha1" );
+        if ( dependencyReducedPom != null )
+        {
+            state.setProperty( DEPENDENCY_REDUCED_POM + ".path", dependencyReducedPom.getAbsolutePath() );
+            state.setProperty( DEPENDENCY_REDUCED_POM + ".sha1", sha1( dependencyReducedPom ) );
+        }
+
+        // noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        OutputStream out = new FileOutputStream( new File( directory, STATE_FILE ) );
+        try
+        {
+            state.store( out, "maven-shade-plugin build state" );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    private Properties load()
+        throws IOException
+    {
+        File file = new File( directory, STATE_FILE );
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            properties.load( in );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        return properties;
+    }
+
+    private File copy( int index )
+    {
+        return new File( directory, "output-" + index + ".jar" );
+    }
+
+    static String sha1( String s )
+    {
+        return Hashing.sha1().newHasher().putString( s ).hash().toString();
+    }
+
+    static String sha1( File file )
+        throws IOException
+    {
+        if ( !file.isFile() )
+        {
+            // e.g. an optional file to include, which may appear later
+            return "";
+        }
+        Hasher hasher = Hashing.sha1().newHasher();
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            // CHECKSTYLE_OFF: MagicNumber
+            byte[] buffer = new byte[8192];
+            // CHECKSTYLE_ON: MagicNumber
+            for ( int n = in.read( buffer ); n != -1; n = in.read( buffer ) )
+            {
+                hasher.putBytes( buffer, 0, n );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        return hasher.hash().toString();
+    }
+}
@@ -0,0 +1,140 @@
+package org.apache.maven.plugins.shade.mojo;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * A directory of shaded files, shared by the builds of many projects and machines, for example on a network file
+ * system. Entries are keyed by the configuration and the content of the input files, but not by their location, so
+ * that a build on another machine finds the files shaded from the same dependencies.
+ * <p/>
+ * An entry is written to a temporary directory first and then renamed, so that concurrent builds only ever see
+ * complete entries. Entries are never removed, but their modification time is updated when they are used, so that
+ * they can be cleaned up by age.
+ */
+class ShadeCache
+{
+    private final File directory;
+
+    private final String key;
+
+    /**
+     * @param directory the shared directory.
+     * @param configuration describes everything but the input files that the shaded files depend on.
+     * @param inputs the input files, in the order they are shaded.
+     */
+    ShadeCache( File directory, String configuration, List<File> inputs )
+        throws IOException
+    {
+        this.directory = directory;
+
+        StringBuilder description = new StringBuilder( configuration );
+        for ( File input : inputs )
+        {
+            description.append( '\n' ).append( ShadeBuildState.sha1( input ) );
+        }
+        this.key = ShadeBuildState.sha1( description.toString() );
+    }
+
+    /**
+     * @return the key of the entry for these inputs and configuration.
+     */
+    String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * Copies the files of the entry to where shading would create them, if the entry exists.
+     *
+     * @param outputs the files shading would create.
+     * @return <code>true</code> if the entry was found and copied.
+     */
+    boolean restore( List<File> outputs )
+        throws IOException
+    {
+        File entry = entry();
+        for ( int i = 0; i < outputs.size(); i++ )
+        {
+            if ( !copy( entry, i ).isFile() )
+            {
+                return false;
+            }
+        }
+        for ( int i = 0; i < outputs.size(); i++ )
+        {
+            FileUtils.copyFile( copy( entry, i ), outputs.get( i ) );
+        }
+        // noinspection ResultOfMethodCallIgnored
+        entry.setLastModified( System.currentTimeMillis() );
+        return true;
+    }
+
+    /**
+     * Adds freshly shaded files as the entry, unless another build added it in the meantime.
+     *
+     * @param outputs the shaded files.
+     */
+    void store( List<File> outputs )
+        throws IOException
+    {
+        File entry = entry();
+        if ( entry.isDirectory() )
+        {
+            return;
+        }
+
+        File temporary = new File( entry.getParentFile(), key + "-" + System.nanoTime() + ".tmp" );
+        try
+        {
+            for ( int i = 0; i < outputs.size(); i++ )
+            {
+                FileUtils.copyFile( outputs.get( i ), copy( temporary, i ) );
+            }
+            if ( !temporary.renameTo( entry ) && !entry.isDirectory() )
+            {
+                throw new IOException( "Could not rename " + temporary + " to " + entry );
+            }
+        }
+        finally
+        {
+            if ( temporary.exists() )
+            {
+                FileUtils.deleteDirectory( temporary );
+            }
+        }
+    }
+
+    private File entry()
+    {
+        // spread the entries over subdirectories, as with git objects
+        return new File( new File( directory, key.substring( 0, 2 ) ), key );
+    }
+
+    private static File copy( File entry, int index )
+    {
+        return new File( entry, "output-" + index + ".jar" );
+    }
+}
@@ -24,9 +24,12 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Writer;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -46,20 +49,25 @@ import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Exclusion;
 import org.apache.maven.model.Model;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.plugins.shade.CodeVersion;
 import org.apache.maven.plugins.shade.ShadeRequest;
 import org.apache.maven.plugins.shade.Shader;
 import org.apache.maven.plugins.shade.filter.Filter;
 import org.apache.maven.plugins.shade.filter.MinijarFilter;
+import org.apache.maven.plugins.shade.filter.MinijarOptions;
 import org.apache.maven.plugins.shade.filter.SimpleFilter;
 import org.apache.maven.plugins.shade.pom.PomWriter;
 import org.apache.maven.plugins.shade.relocation.Relocator;
 import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
+import org.apache.maven.plugins.shade.resource.IncludeResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ManifestResourceTransformer;
 import org.apache.maven.plugins.shade.resource.ResourceTransformer;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.MavenProject;
@@ -77,8 +85,10 @@ import org.codehaus.plexus.component.repository.exception.ComponentLookupExcepti
 import org.codehaus.plexus.context.Context;
 import org.codehaus.plexus.context.ContextException;
 import org.codehaus.plexus.personality.plexus.lifecycle.phase.Contextualizable;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.WriterFactory;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 
 /**
  * Mojo that performs shading delegating to the Shader component.
@@ -95,6 +105,13 @@ public class ShadeMojo
     extends AbstractMojo
     implements Contextualizable
 {
+    /**
+     * The parameters which only tell where files go, not what they contain.
+     */
+    private static final List<String> LOCATION_PARAMETERS =
+        Arrays.asList( "outputDirectory", "outputFile", "dependencyReducedPomLocation", "minimizeJarCacheDirectory",
+                       "relocationCacheDirectory", "buildStateDirectory", "sharedCacheDirectory", "metricsDirectory" );
+
     /**
      * The current Maven session.
      */
@@ -343,6 +360,82 @@ public class ShadeMojo
     @Parameter
     private boolean minimizeJar;
 
+    /**
+     * When true, the classes of each jar and the classes they refer to are kept in {@link #minimizeJarCacheDirectory},
+     * keyed by the content of the jar, so that {@link #minimizeJar} only runs the jars which changed through ASM. The
+     * project's own jar and snapshot dependencies, which usually change between builds, are not kept there. All jars
+     * are also kept in memory during the build, so that the modules of a reactor which shade the same dependencies
+     * read each of them once.
+     */
+    @Parameter( property = "shadeMinimizeJarCache", defaultValue = "true" )
+    private boolean minimizeJarCache;
+
+    /**
+     * The directory where the class references of the jars are kept when {@link #minimizeJarCache} is enabled. It can
+     * point outside of the build directory to be shared by several projects and survive <code>mvn clean</code>, such
+     * as <code>${settings.localRepository}/.cache/maven-shade-plugin/minijar</code> next to the jars themselves.
+     */
+    @Parameter( defaultValue = "${project.build.directory}/shade-cache/minijar" )
+    private File minimizeJarCacheDirectory;
+
+    /**
+     * When true, {@link #minimizeJar} keeps only the classes reachable from entry points, instead of all the classes of
+     * the project and what they need: classes of the project which nothing uses are removed too. The entry points are
+     * the Main-Class of the shaded manifest, which is the one a <code>ManifestResourceTransformer</code> sets or else
+     * that of the project's manifest, the service providers the project registers in <code>META-INF/services</code>
+     * and the classes listed in {@link #minimizeJarEntryPoints}.
+     */
+    @Parameter( property = "shadeMinimizeJarFromEntryPoints", defaultValue = "false" )
+    private boolean minimizeJarFromEntryPoints;
+
+    /**
+     * More entry points for {@link #minimizeJarFromEntryPoints}, such as classes loaded by reflection. Each one is a
+     * class name such as <code>org.example.Main</code>, or <code>org.example.api.*</code> for the classes of a package,
+     * or <code>org.example.api.**</code> for those of its subpackages too.
+     */
+    @Parameter
+    private String[] minimizeJarEntryPoints;
+
+    /**
+     * When true, {@link #minimizeJar} keeps the service providers any jar registers in <code>META-INF/services</code>
+     * when their service type is kept or comes from the JDK, with the classes they need, since
+     * <code>ServiceLoader</code> loads them without any class referring to them.
+     */
+    @Parameter( property = "shadeMinimizeJarServices", defaultValue = "true" )
+    private boolean minimizeJarServices;
+
+    /**
+     * When true, {@link #minimizeJar} also keeps the classes whose names appear in string constants of the classes
+     * kept, such as <code>"org.example.Driver"</code> given to <code>Class.forName</code>. This keeps more classes than
+     * needed when strings only look like class names.
+     */
+    @Parameter( property = "shadeMinimizeJarNamedClasses", defaultValue = "false" )
+    private boolean minimizeJarNamedClasses;
+
+    /**
+     * When true, {@link #minimizeJar} also removes the methods and fields of the kept classes of the dependencies
+     * which the code kept cannot reach. A method is kept when a method kept calls any method with the same name and
+     * descriptor, so overriding methods are kept with the methods they override. The classes of the project keep all
+     * their members, even with {@link #minimizeJarFromEntryPoints}, and so do the methods which may be called by the
+     * JDK, such as <code>toString()</code> or the methods of a <code>Runnable</code>.
+     */
+    @Parameter( property = "shadeMinimizeJarMembers", defaultValue = "false" )
+    private boolean minimizeJarMembers;
+
+    /**
+     * The members {@link #minimizeJarMembers} keeps besides those it finds used, such as the methods only called
+     * through reflection. Each one is a class name or pattern as in {@link #minimizeJarEntryPoints}, followed by
+     * <code>#</code> and the name of a method or field, or by <code>#*</code> or nothing to keep all the members:
+     * <pre>
+     * &lt;minimizeJarKeepRules&gt;
+     *   &lt;minimizeJarKeepRule&gt;org.example.model.**&lt;/minimizeJarKeepRule&gt;
+     *   &lt;minimizeJarKeepRule&gt;org.example.Plugin#configure&lt;/minimizeJarKeepRule&gt;
+     * &lt;/minimizeJarKeepRules&gt;
+     * </pre>
+     */
+    @Parameter
+    private String[] minimizeJarKeepRules;
+
     /**
      * The path to the output file for the shaded artifact. When this parameter is set, the created archive will neither
      * replace the project's main artifact nor will it be attached. Hence, this parameter causes the parameters
@@ -378,6 +471,96 @@ public class ShadeMojo
     
     @Parameter( defaultValue = "false" )
     private boolean includeShadedNamesAsMetaData;
+
+    /**
+     * The number of threads used to relocate classes. When greater than 1, class files are read and remapped, and
+     * entries are compressed, on a worker pool while a single writer adds them to the shaded jar in their original
+     * order, so the result does not depend on this setting. With {@link #minimizeJar}, the jars are also analyzed on
+     * that many threads. A value of 0 uses one thread per available processor.
+     * Custom {@link Relocator} implementations must be thread-safe to be used with more than one thread.
+     */
+    @Parameter( property = "shadeThreads", defaultValue = "1" )
+    private int threads;
+
+    /**
+     * When true, the classes rewritten by the relocators are kept in {@link #relocationCacheDirectory}, keyed by the
+     * content of the jar they come from and by the relocations, and are reused by the next build for the jars which
+     * did not change. The files the last build did not use are removed, but for as many as it used.
+     */
+    @Parameter( property = "shadeRelocationCache", defaultValue = "true" )
+    private boolean relocationCache;
+
+    /**
+     * The directory where relocated classes are kept when {@link #relocationCache} is enabled.
+     */
+    @Parameter( defaultValue = "${project.build.directory}/shade-cache" )
+    private File relocationCacheDirectory;
+
+    /**
+     * The level used to compress the entries of the shaded jar, from 0 (none) to 9 (best), or -1 for the default
+     * level. Lower levels write faster. Entries which are copied unchanged from the input jars keep their compression.
+     */
+    @Parameter( property = "shadeCompressionLevel", defaultValue = "-1" )
+    private int compressionLevel;
+
+    /**
+     * When true, the entries of the shaded jar are stored without compression. This writes faster, and classes load
+     * faster from such a jar, at the cost of its size; it suits jars which end up compressed anyway, such as in a
+     * container image layer.
+     */
+    @Parameter( property = "shadeUncompressed", defaultValue = "false" )
+    private boolean uncompressed;
+
+    /**
+     * The time given to all entries of the shaded jar, so that building the same inputs gives the same bytes. Either an
+     * ISO 8601 date and time such as <code>2020-01-01T00:00:00Z</code>, or a number of seconds since the epoch. When
+     * not set, or set to a single character, entries get the time they are written at.
+     */
+    @Parameter( defaultValue = "${project.build.outputTimestamp}" )
+    private String outputTimestamp;
+
+    private Date outputDate;
+
+    /**
+     * When true, the configuration and the input files of each execution are recorded in {@link #buildStateDirectory}
+     * together with copies of the shaded files. If nothing changed by the next build, these copies are used instead of
+     * shading again; the artifact is still replaced or attached as configured. Files read by custom resource
+     * transformers and relocators are not tracked, so the check is skipped when the configuration has any.
+     */
+    @Parameter( property = "shadeUpToDateCheck", defaultValue = "true" )
+    private boolean upToDateCheck;
+
+    /**
+     * The directory where the state of the last build is kept when {@link #upToDateCheck} is enabled.
+     */
+    @Parameter( defaultValue = "${project.build.directory}/shade-state" )
+    private File buildStateDirectory;
+
+    /**
+     * A directory shared by many builds, for example on a network file system, where shaded files are kept by the
+     * checksums of the input files and the configuration. When set, files found there are used instead of shading, and
+     * newly shaded files are added to it. As with {@link #upToDateCheck}, files read by custom resource transformers
+     * are not tracked, so do not share the directory between builds using them.
+     */
+    @Parameter( property = "shadeSharedCacheDirectory" )
+    private File sharedCacheDirectory;
+
+    /**
+     * When true, the time spent in each phase of shading, and the entry and byte counts of each input jar, are logged
+     * as a table and written as JSON to {@link #metricsDirectory}, one file per shaded jar. Otherwise the table is only
+     * logged at debug level.
+     */
+    @Parameter( property = "shadeMetrics", defaultValue = "false" )
+    private boolean metrics;
+
+    /**
+     * The directory where the metrics are written when {@link #metrics} is enabled.
+     */
+    @Parameter( defaultValue = "${project.build.directory}/shade-metrics" )
+    private File metricsDirectory;
+
+    @Parameter( defaultValue = "${mojoExecution}", readonly = true )
+    private MojoExecution mojoExecution;
     
     /**
      * @since 1.6
@@ -399,6 +582,15 @@ public class ShadeMojo
 
         setupHintedShader();
 
+        // CHECKSTYLE_OFF: MagicNumber
+        if ( compressionLevel < -1 || compressionLevel > 9 )
+        {
+            throw new MojoExecutionException( "The compression level has to be between 0 and 9, or -1 for the default,"
+                + " but was " + compressionLevel );
+        }
+        // CHECKSTYLE_ON: MagicNumber
+        outputDate = parseOutputTimestamp( outputTimestamp );
+
         Set<File> artifacts = new LinkedHashSet<File>();
         Set<String> artifactIds = new LinkedHashSet<String>();
         Set<File> sourceArtifacts = new LinkedHashSet<File>();
@@ -443,36 +635,92 @@ public class ShadeMojo
         File sourcesJar = shadedSourceArtifactFileWithClassifier();
         File testJar = shadedTestArtifactFileWithClassifier();
 
+        List<File> outputs = new ArrayList<File>();
+        outputs.add( outputJar );
+        if ( createSourcesJar )
+        {
+            outputs.add( sourcesJar );
+        }
+        if ( shadeTestJar )
+        {
+            outputs.add( testJar );
+        }
+
         // Now add our extra resources
         try
         {
-            List<Filter> filters = getFilters();
-
             List<Relocator> relocators = getRelocators();
 
             List<ResourceTransformer> resourceTransformers = getResourceTransformers();
 
-            ShadeRequest shadeRequest = shadeRequest( artifacts, outputJar, filters, relocators, resourceTransformers );
+            ShadeBuildState buildState =
+                buildState( artifacts, sourceArtifacts, testArtifacts, relocators, resourceTransformers, outputs );
 
-            shader.shade( shadeRequest );
-
-            if ( createSourcesJar )
+            boolean upToDate = buildState != null && buildState.isUpToDate( outputs );
+            if ( upToDate )
             {
-                ShadeRequest shadeSourcesRequest =
-                    createShadeSourcesRequest( sourceArtifacts, sourcesJar, filters, relocators, resourceTransformers );
-
-                shader.shade( shadeSourcesRequest );
+                getLog().info( "Nothing changed since the last build, reusing its shaded artifact." );
+                buildState.restore( outputs );
             }
-
-            if ( shadeTestJar )
+            else
             {
+                if ( buildState != null )
+                {
+                    buildState.invalidate();
+                    buildState.recordInputs();
+                }
+
+                ShadeCache sharedCache =
+                    sharedCache( artifacts, artifactIds, sourceArtifacts, testArtifacts, relocators,
+                                 resourceTransformers, outputs );
+
+                if ( sharedCache != null && sharedCache.restore( outputs ) )
+                {
+                    getLog().info( "Reusing the shaded artifact " + sharedCache.getKey() + " from "
+                                       + sharedCacheDirectory );
+                }
+                else
+                {
+                    List<Filter> filters = getFilters();
+
+                    ShadeRequest shadeRequest =
+                        shadeRequest( artifacts, outputJar, filters, relocators, resourceTransformers );
+
+                    shader.shade( shadeRequest );
+
+                    if ( createSourcesJar )
+                    {
+                        ShadeRequest shadeSourcesRequest = createShadeSourcesRequest( sourceArtifacts, sourcesJar,
+                                                                                      filters, relocators,
+                                                                                      resourceTransformers );
+
+                        shader.shade( shadeSourcesRequest );
+                    }
+
+                    if ( shadeTestJar )
+                    {
+
+                        ShadeRequest shadeSourcesRequest =
+                            createShadeSourcesRequest( testArtifacts, testJar, filters, relocators,
+                                                       resourceTransformers );
 
-                ShadeRequest shadeSourcesRequest =
-                    createShadeSourcesRequest( testArtifacts, testJar, filters, relocators, resourceTransformers );
+                        shader.shade( shadeSourcesRequest );
+                    }
+
+                    if ( sharedCache != null )
+                    {
+                        sharedCache.store( outputs );
+                    }
+                }
 
-                shader.shade( shadeSourcesRequest );
+                if ( buildState != null )
+                {
+                    buildState.save( outputs );
+                }
             }
 
+            File reducedPom = null;
+
             if ( outputFile == null )
             {
                 boolean renamed = false;
@@ -532,11 +780,24 @@ public class ShadeMojo
 
                         if ( createDependencyReducedPom )
                         {
-                            createDependencyReducedPom( artifactIds );
+                            if ( !upToDate || !reuseDependencyReducedPom( buildState ) )
+                            {
+                                createDependencyReducedPom( artifactIds );
+                            }
+                            if ( dependencyReducedPomLocation != null
+                                && dependencyReducedPomLocation.equals( project.getFile() ) )
+                            {
+                                reducedPom = dependencyReducedPomLocation;
+                            }
                         }
                     }
                 }
             }
+
+            if ( buildState != null )
+            {
+                buildState.commit( reducedPom );
+            }
         }
         catch ( Exception e )
         {
@@ -557,6 +818,243 @@ public class ShadeMojo
         getLog().error( "- You removed the configuration of the maven-jar-plugin that produces the main artifact." );
     }
 
+    /**
+     * @return the state of the last build of this execution, or <code>null</code> if it should not be checked.
+     */
+    private ShadeBuildState buildState( Set<File> artifacts, Set<File> sourceArtifacts, Set<File> testArtifacts,
+                                        List<Relocator> relocators, List<ResourceTransformer> resourceTransformers,
+                                        List<File> outputs )
+    {
+        // a unique dependency reduced POM is a new file on every build
+        if ( !upToDateCheck || mojoExecution == null || generateUniqueDependencyReducedPom )
+        {
+            return null;
+        }
+        Object custom = findCustomImplementation( relocators, resourceTransformers );
+        if ( custom != null )
+        {
+            getLog().info( "Not checking whether the shaded artifact is up to date, since the files "
+                               + custom.getClass().getName() + " reads are not tracked." );
+            return null;
+        }
+
+        StringBuilder fingerprint = new StringBuilder( CodeVersion.get() ).append( '\n' );
+        fingerprint.append( mojoExecution.getConfiguration() ).append( '\n' );
+        // the configuration only shows expressions for parameters which may come from properties
+        Object[] parameters =
+            { outputFile, outputDirectory, finalName, project.getBuild().getFinalName(), shadedArtifactId,
+                shadedGroupFilter, shadedArtifactAttached, shadedClassifierName, createDependencyReducedPom,
+                dependencyReducedPomLocation, keepDependenciesWithProvidedScope, promoteTransitiveDependencies,
+                createSourcesJar, shadeSourcesContent, minimizeJar, minimizeJarFromEntryPoints, minimizeJarMembers,
+                minimizeJarServices, minimizeJarNamedClasses, shaderHint, useBaseVersion, shadeTestJar,
+                includeShadedNamesAsMetaData, compressionLevel, uncompressed, outputTimestamp, relocators.size(),
+                resourceTransformers.size() };
+        for ( Object parameter : parameters )
+        {
+            fingerprint.append( parameter ).append( '\n' );
+        }
+        // the dependency reduced POM is made from them
+        for ( Artifact artifact : project.getArtifacts() )
+        {
+            fingerprint.append( artifact.getId() ).append( ':' ).append( artifact.getScope() ).append( '\n' );
+        }
+
+        List<File> inputs = inputs( artifacts, sourceArtifacts, testArtifacts, resourceTransformers );
+        if ( project.getFile() != null )
+        {
+            inputs.add( project.getFile() );
+        }
+
+        // the inputs shading replaces, as decided at the end of execute()
+        Map<File, File> replacedInputs = new HashMap<File, File>();
+        boolean renamed = finalName != null && finalName.length() > 0
+            && !finalName.equals( project.getBuild().getFinalName() );
+        if ( outputFile == null && !shadedArtifactAttached && !renamed )
+        {
+            replacedInputs.put( project.getArtifact().getFile(), outputs.get( 0 ) );
+            if ( createSourcesJar )
+            {
+                replacedInputs.put( shadedSourcesArtifactFile(), outputs.get( 1 ) );
+            }
+            if ( shadeTestJar )
+            {
+                replacedInputs.put( shadedTestArtifactFile(), outputs.get( outputs.size() - 1 ) );
+            }
+        }
+
+        return new ShadeBuildState( new File( buildStateDirectory, mojoExecution.getExecutionId() ),
+                                    fingerprint.toString(), inputs, replacedInputs );
+    }
+
+    /**
+     * @return a relocator or resource transformer which is not one of the plugin's own, or <code>null</code>.
+     */
+    private static Object findCustomImplementation( List<Relocator> relocators,
+                                                    List<ResourceTransformer> resourceTransformers )
+    {
+        List<Object> implementations = new ArrayList<Object>( relocators );
+        implementations.addAll( resourceTransformers );
+        for ( Object implementation : implementations )
+        {
+            if ( !implementation.getClass().getName().startsWith( "org.apache.maven.plugins.shade." ) )
+            {
+                return implementation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the entry of the shared cache for these inputs, or <code>null</code> if there is no shared cache.
+     */
+    private ShadeCache sharedCache( Set<File> artifacts, Set<String> artifactIds, Set<File> sourceArtifacts,
+                                    Set<File> testArtifacts, List<Relocator> relocators,
+                                    List<ResourceTransformer> resourceTransformers, List<File> outputs )
+        throws IOException
+    {
+        if ( sharedCacheDirectory == null || mojoExecution == null )
+        {
+            return null;
+        }
+
+        // only what the content of the shaded files depends on, not where they are
+        StringBuilder configuration = new StringBuilder( CodeVersion.get() ).append( '\n' );
+        configuration.append( locationIndependentConfiguration() ).append( '\n' );
+        Object[] parameters =
+            { createSourcesJar, shadeSourcesContent, minimizeJar, minimizeJarFromEntryPoints, minimizeJarMembers,
+                minimizeJarServices, minimizeJarNamedClasses, shaderHint, shadeTestJar, includeShadedNamesAsMetaData,
+                compressionLevel, uncompressed, outputTimestamp, relocators.size(), resourceTransformers.size(),
+                outputs.size() };
+        for ( Object parameter : parameters )
+        {
+            configuration.append( parameter ).append( '\n' );
+        }
+        // filters may select the classes of an artifact by its id
+        for ( String artifactId : artifactIds )
+        {
+            configuration.append( artifactId ).append( '\n' );
+        }
+
+        return new ShadeCache( sharedCacheDirectory, configuration.toString(),
+                               inputs( artifacts, sourceArtifacts, testArtifacts, resourceTransformers ) );
+    }
+
+    /**
+     * @return the configuration of this execution without the parameters which only tell where files go, and with the
+     *         paths of the project's directory replaced, so that the same project checked out elsewhere has the same
+     *         configuration.
+     */
+    private String locationIndependentConfiguration()
+    {
+        if ( mojoExecution.getConfiguration() == null )
+        {
+            return "";
+        }
+        Xpp3Dom configuration = new Xpp3Dom( mojoExecution.getConfiguration() );
+        for ( int i = configuration.getChildCount() - 1; i >= 0; i-- )
+        {
+            if ( LOCATION_PARAMETERS.contains( configuration.getChild( i ).getName() ) )
+            {
+                configuration.removeChild( i );
+            }
+        }
+        String result = configuration.toString();
+        if ( project.getBasedir() != null )
+        {
+            result = result.replace( project.getBasedir().getAbsolutePath(), "${basedir}" );
+        }
+        return result;
+    }
+
+    /**
+     * @return the files the shaded files are made from.
+     */
+    private static List<File> inputs( Set<File> artifacts, Set<File> sourceArtifacts, Set<File> testArtifacts,
+                                      List<ResourceTransformer> resourceTransformers )
+    {
+        List<File> inputs = new ArrayList<File>();
+        inputs.addAll( artifacts );
+        inputs.addAll( sourceArtifacts );
+        inputs.addAll( testArtifacts );
+        for ( ResourceTransformer transformer : resourceTransformers )
+        {
+            if ( transformer instanceof IncludeResourceTransformer
+                && ( (IncludeResourceTransformer) transformer ).getFile() != null )
+            {
+                inputs.add( ( (IncludeResourceTransformer) transformer ).getFile() );
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Uses the dependency reduced POM of the last build again, if it was not changed since.
+     *
+     * @return <code>false</code> if it has to be written again.
+     */
+    private boolean reuseDependencyReducedPom( ShadeBuildState buildState )
+        throws IOException
+    {
+        File pom = buildState.getDependencyReducedPom();
+        if ( pom == null && buildState.hasDependencyReducedPom() )
+        {
+            return false;
+        }
+
+        // MSHADE-155
+        project.getOriginalModel().setArtifactId( shadedArtifactId );
+
+        if ( pom != null )
+        {
+            getLog().info( "Reusing dependency-reduced POM at: " + pom.getAbsolutePath() );
+            dependencyReducedPomLocation = pom;
+            project.setFile( pom );
+        }
+        return true;
+    }
+
+    /**
+     * @param outputTimestamp the value of {@link #outputTimestamp}.
+     * @return the time it stands for, or <code>null</code> if it is not set.
+     */
+    static Date parseOutputTimestamp( String outputTimestamp )
+        throws MojoExecutionException
+    {
+        // a single character overrides a timestamp inherited from a parent project
+        if ( outputTimestamp == null || outputTimestamp.length() < 2 )
+        {
+            return null;
+        }
+        if ( outputTimestamp.matches( "\\d+" ) )
+        {
+            // CHECKSTYLE_OFF: MagicNumber
+            return new Date( Long.parseLong( outputTimestamp ) * 1000 );
+            // CHECKSTYLE_ON: MagicNumber
+        }
+
+        // SimpleDateFormat only knows time zones without colon, such as +0100
+        String timestamp = outputTimestamp;
+        if ( timestamp.endsWith( "Z" ) )
+        {
+            timestamp = timestamp.substring( 0, timestamp.length() - 1 ) + "+0000";
+        }
+        else if ( timestamp.matches( ".*[+-]\\d\\d:\\d\\d" ) )
+        {
+            int colon = timestamp.length() - 3;
+            timestamp = timestamp.substring( 0, colon ) + timestamp.substring( colon + 1 );
+        }
+        SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ssZ" );
+        format.setLenient( false );
+        ParsePosition position = new ParsePosition( 0 );
+        Date date = format.parse( timestamp, position );
+        if ( date == null || position.getIndex() != timestamp.length() )
+        {
+            throw new MojoExecutionException( "Invalid output timestamp '" + outputTimestamp
+                + "', expected an ISO 8601 date and time such as 2020-01-01T00:00:00Z or a number of seconds" );
+        }
+        return date;
+    }
+
     private ShadeRequest shadeRequest( Set<File> artifacts, File outputJar, List<Filter> filters,
                                        List<Relocator> relocators, List<ResourceTransformer> resourceTransformers )
     {
@@ -567,6 +1065,19 @@ public class ShadeMojo
         shadeRequest.setRelocators( relocators );
         shadeRequest.setResourceTransformers( resourceTransformers );
         shadeRequest.setListShadedInJar( includeShadedNamesAsMetaData );
+        shadeRequest.setThreads( threads );
+        shadeRequest.setCompressionLevel( compressionLevel );
+        shadeRequest.setUncompressed( uncompressed );
+        shadeRequest.setOutputTimestamp( outputDate );
+        if ( metrics )
+        {
+            shadeRequest.setMetricsReport( new File( metricsDirectory,
+                                                     FileUtils.removeExtension( outputJar.getName() ) + ".json" ) );
+        }
+        if ( relocationCache )
+        {
+            shadeRequest.setRelocationCacheDirectory( relocationCacheDirectory );
+        }
         return shadeRequest;
     }
 
@@ -754,6 +1265,51 @@ public class ShadeMojo
         return Arrays.asList( transformers );
     }
 
+    /**
+     * @return the Main-Class set by a {@link ManifestResourceTransformer}, or <code>null</code>.
+     */
+    private String getManifestMainClass()
+    {
+        if ( transformers != null )
+        {
+            for ( ResourceTransformer transformer : transformers )
+            {
+                if ( transformer instanceof ManifestResourceTransformer
+                    && ( (ManifestResourceTransformer) transformer ).getMainClass() != null )
+                {
+                    return ( (ManifestResourceTransformer) transformer ).getMainClass().trim();
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<String> getEntryPoints()
+    {
+        List<String> entryPoints = new ArrayList<String>();
+        if ( minimizeJarEntryPoints != null )
+        {
+            for ( String entryPoint : minimizeJarEntryPoints )
+            {
+                entryPoints.add( entryPoint.trim() );
+            }
+        }
+        return entryPoints;
+    }
+
+    private List<String> getKeepRules()
+    {
+        List<String> keepRules = new ArrayList<String>();
+        if ( minimizeJarKeepRules != null )
+        {
+            for ( String keepRule : minimizeJarKeepRules )
+            {
+                keepRules.add( keepRule.trim() );
+            }
+        }
+        return keepRules;
+    }
+
     private List<Filter> getFilters()
         throws MojoExecutionException
     {
@@ -813,9 +1369,17 @@ public class ShadeMojo
         {
             getLog().info( "Minimizing jar " + project.getArtifact() );
 
+            MinijarOptions options = new MinijarOptions();
+            options.setThreads( threads );
+            options.setCacheDirectory( minimizeJarCache ? minimizeJarCacheDirectory : null );
+            options.setEntryPoints( minimizeJarFromEntryPoints ? getEntryPoints() : null );
+            options.setMainClass( minimizeJarFromEntryPoints ? getManifestMainClass() : null );
+            options.setKeepRules( minimizeJarMembers ? getKeepRules() : null );
+            options.setServiceProviders( minimizeJarServices );
+            options.setNamedClasses( minimizeJarNamedClasses );
             try
             {
-                filters.add( new MinijarFilter( project, getLog(), simpleFilters ) );
+                filters.add( new MinijarFilter( project, getLog(), simpleFilters, options ) );
             }
             catch ( IOException e )
             {
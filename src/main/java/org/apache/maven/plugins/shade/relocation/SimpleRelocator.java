@@ -19,9 +19,11 @@ package org.apache.maven.plugins.shade.relocation;
  * under the License.
  */
 
-import org.codehaus.plexus.util.SelectorUtils;
+import org.codehaus.plexus.util.MatchPattern;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -43,12 +45,25 @@ public class SimpleRelocator
 
     private final String shadedPathPattern;
 
-    private final Set<String> includes;
+    private final Set<String> includePatterns;
 
-    private final Set<String> excludes;
+    private final Set<String> excludePatterns;
+
+    private final List<MatchPattern> includes;
+
+    private final List<MatchPattern> excludes;
 
     private final boolean rawString;
 
+    /**
+     * {@link #pathPattern}, {@link #pattern} and the source pattern compiled once, Pattern instances are thread safe.
+     */
+    private final Pattern pathRegex;
+
+    private final Pattern classRegex;
+
+    private final Pattern sourceRegex;
+
     public SimpleRelocator( String patt, String shadedPattern, List<String> includes, List<String> excludes )
     {
         this( patt, shadedPattern, includes, excludes, false );
@@ -92,8 +107,32 @@ public class SimpleRelocator
             }
         }
 
-        this.includes = normalizePatterns( includes );
-        this.excludes = normalizePatterns( excludes );
+        this.pathRegex = this.pathPattern != null ? Pattern.compile( this.pathPattern ) : null;
+        this.classRegex = this.pattern != null ? Pattern.compile( this.pattern ) : null;
+        this.sourceRegex = this.pattern != null ? Pattern.compile( "\\b" + this.pattern ) : null;
+
+        this.includePatterns = normalizePatterns( includes );
+        this.excludePatterns = normalizePatterns( excludes );
+        this.includes = compilePatterns( includePatterns );
+        this.excludes = compilePatterns( excludePatterns );
+    }
+
+    /**
+     * Tokenizes the include and exclude patterns once, instead of on every match.
+     */
+    private static List<MatchPattern> compilePatterns( Set<String> normalized )
+    {
+        if ( normalized == null )
+        {
+            return null;
+        }
+
+        List<MatchPattern> compiled = new ArrayList<MatchPattern>( normalized.size() );
+        for ( String pattern : normalized )
+        {
+            compiled.add( MatchPattern.fromString( pattern ) );
+        }
+        return compiled;
     }
 
     private static Set<String> normalizePatterns( Collection<String> patterns )
@@ -126,9 +165,9 @@ public class SimpleRelocator
     {
         if ( includes != null && !includes.isEmpty() )
         {
-            for ( String include : includes )
+            for ( MatchPattern include : includes )
             {
-                if ( SelectorUtils.matchPath( include, path, true ) )
+                if ( include.matchPath( path, true ) )
                 {
                     return true;
                 }
@@ -142,9 +181,9 @@ public class SimpleRelocator
     {
         if ( excludes != null && !excludes.isEmpty() )
         {
-            for ( String exclude : excludes )
+            for ( MatchPattern exclude : excludes )
             {
-                if ( SelectorUtils.matchPath( exclude, path, true ) )
+                if ( exclude.matchPath( path, true ) )
                 {
                     return true;
                 }
@@ -157,7 +196,7 @@ public class SimpleRelocator
     {
         if ( rawString )
         {
-            return Pattern.compile( pathPattern ).matcher( path ).find();
+            return pathRegex.matcher( path ).find();
         }
 
         if ( path.endsWith( ".class" ) )
@@ -184,17 +223,75 @@ public class SimpleRelocator
     {
         if ( rawString )
         {
-            return path.replaceAll( pathPattern, shadedPathPattern );
+            return pathRegex.matcher( path ).replaceAll( shadedPathPattern );
         }
         else
         {
-            return path.replaceFirst( pathPattern, shadedPathPattern );
+            return pathRegex.matcher( path ).replaceFirst( shadedPathPattern );
         }
     }
 
     public String relocateClass( String clazz )
     {
-        return clazz.replaceFirst( pattern, shadedPattern );
+        return classRegex.matcher( clazz ).replaceFirst( shadedPattern );
+    }
+
+    /**
+     * @return <code>true</code> if the pattern is a regular expression applied to raw strings.
+     */
+    public boolean isRawString()
+    {
+        return rawString;
+    }
+
+    /**
+     * @return the package prefix being relocated in path form, e.g. <code>org/apache</code>.
+     */
+    public String getPathPattern()
+    {
+        return pathPattern;
+    }
+
+    /**
+     * @return the package prefix being relocated in class name form, e.g. <code>org.apache</code>, or
+     *         <code>null</code> for a raw string relocator.
+     */
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * @return the package prefix classes are relocated to in path form, or the replacement for a raw string relocator.
+     */
+    public String getShadedPathPattern()
+    {
+        return shadedPathPattern;
+    }
+
+    /**
+     * @return the package prefix classes are relocated to in class name form, or <code>null</code> for a raw string
+     *         relocator.
+     */
+    public String getShadedPattern()
+    {
+        return shadedPattern;
+    }
+
+    /**
+     * @return the include patterns in path form, or <code>null</code> if everything is included.
+     */
+    public Set<String> getIncludes()
+    {
+        return includePatterns == null ? null : Collections.unmodifiableSet( includePatterns );
+    }
+
+    /**
+     * @return the exclude patterns in path form, or <code>null</code> if nothing is excluded.
+     */
+    public Set<String> getExcludes()
+    {
+        return excludePatterns == null ? null : Collections.unmodifiableSet( excludePatterns );
     }
 
     public String applyToSourceContent( String sourceContent )
@@ -205,7 +302,7 @@ public class SimpleRelocator
         }
         else
         {
-            return sourceContent.replaceAll( "\\b" + pattern, shadedPattern );
+            return sourceRegex.matcher( sourceContent ).replaceAll( shadedPattern );
         }
     }
 }
@@ -41,6 +41,14 @@ public class IncludeResourceTransformer
 
     String resource;
 
+    /**
+     * @return the file to include.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
     public boolean canTransformResource( String r )
     {
         return false;
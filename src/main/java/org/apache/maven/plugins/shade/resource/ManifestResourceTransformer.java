@@ -53,6 +53,20 @@ public class ManifestResourceTransformer
 
     private Manifest manifest;
 
+    /**
+     * @return the Main-Class this transformer writes to the manifest, or <code>null</code> if it keeps the one of the
+     *         project's manifest.
+     * @since 2.4.5
+     */
+    public String getMainClass()
+    {
+        if ( manifestEntries != null && manifestEntries.get( Attributes.Name.MAIN_CLASS.toString() ) != null )
+        {
+            return manifestEntries.get( Attributes.Name.MAIN_CLASS.toString() ).toString();
+        }
+        return mainClass;
+    }
+
     public boolean canTransformResource( String resource )
     {
         if ( JarFile.MANIFEST_NAME.equalsIgnoreCase( resource ) )
@@ -24,9 +24,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
@@ -49,7 +49,8 @@ public class ServicesResourceTransformer
 
     private static final String SERVICES_PATH = "META-INF/services";
 
-    private Map<String, ServiceStream> serviceEntries = new HashMap<String, ServiceStream>();
+    // sorted, so that the entries are written in the same order on every build
+    private Map<String, ServiceStream> serviceEntries = new TreeMap<String, ServiceStream>();
 
     public boolean canTransformResource( String resource )
     {
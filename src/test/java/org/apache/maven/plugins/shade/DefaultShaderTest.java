@@ -21,28 +21,45 @@ package org.apache.maven.plugins.shade;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
 import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import junit.framework.TestCase;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.maven.plugins.shade.filter.Filter;
+import org.apache.maven.plugins.shade.filter.SimpleFilter;
 import org.apache.maven.plugins.shade.relocation.Relocator;
 import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
 import org.apache.maven.plugins.shade.resource.ComponentsXmlResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ManifestResourceTransformer;
 import org.apache.maven.plugins.shade.resource.ResourceTransformer;
 import org.codehaus.plexus.logging.Logger;
 import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.codehaus.plexus.util.FileUtils;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Opcodes;
@@ -246,6 +263,564 @@ public class DefaultShaderTest
 
     }
 
+    public void testParallelShadingWritesSameEntriesAsSerialShading()
+        throws Exception
+    {
+        File serial = new File( "target/foo-relocate-serial.jar" );
+        File parallel = new File( "target/foo-relocate-parallel.jar" );
+
+        newShader().shade( relocatingShadeRequest( serial, 1 ) );
+        newShader().shade( relocatingShadeRequest( parallel, 4 ) );
+
+        List<String> serialEntries = readEntries( serial );
+        assertTrue( serialEntries.size() > 0 );
+        assertEquals( serialEntries, readEntries( parallel ) );
+        // entries compressed on the pool are compressed exactly as the stream would do it
+        assertEquals( readCompression( serial ), readCompression( parallel ) );
+    }
+
+    public void testRemapperCachesMappedNames()
+    {
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "org.foo", "hidden.org.foo", null, null ) );
+
+        DefaultShader.RelocatorRemapper remapper = new DefaultShader.RelocatorRemapper( relocators );
+
+        assertEquals( "hidden/org/foo/Bar", remapper.map( "org/foo/Bar" ) );
+        assertEquals( "[Lhidden/org/foo/Bar;", remapper.map( "[Lorg/foo/Bar;" ) );
+        assertEquals( "java/lang/String", remapper.map( "java/lang/String" ) );
+        assertEquals( 0, remapper.getCacheHits() );
+        assertEquals( 3, remapper.getCacheMisses() );
+
+        assertEquals( "hidden/org/foo/Bar", remapper.map( "org/foo/Bar" ) );
+        assertEquals( "[Lhidden/org/foo/Bar;", remapper.map( "[Lorg/foo/Bar;" ) );
+        assertEquals( "java/lang/String", remapper.map( "java/lang/String" ) );
+        assertEquals( 3, remapper.getCacheHits() );
+        assertEquals( 3, remapper.getCacheMisses() );
+    }
+
+    public void testRemapperMapsDescriptors()
+    {
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "org.foo", "hidden.org.foo", null, null ) );
+
+        DefaultShader.RelocatorRemapper remapper = new DefaultShader.RelocatorRemapper( relocators );
+
+        assertEquals( "Lhidden/org/foo/Bar;", remapper.mapValue( "Lorg/foo/Bar;" ) );
+        assertEquals( "[[Lhidden/org/foo/Bar;", remapper.mapValue( "[[Lorg/foo/Bar;" ) );
+        assertEquals( "hidden.org.foo.Bar", remapper.mapValue( "org.foo.Bar" ) );
+        assertEquals( "hidden/org/foo/bar.properties", remapper.mapValue( "org/foo/bar.properties" ) );
+        assertEquals( "[Lhidden/org/foo/Bar;", remapper.map( "[Lorg/foo/Bar;" ) );
+        assertEquals( "L;", remapper.map( "L;" ) );
+        assertEquals( "[", remapper.map( "[" ) );
+        assertEquals( "Lorg/foo/Bar", remapper.map( "Lorg/foo/Bar" ) );
+
+        assertEquals( 0, DefaultShader.RelocatorRemapper.classNameStart( "java/lang/String" ) );
+        assertEquals( 1, DefaultShader.RelocatorRemapper.classNameStart( "Ljava/lang/String;" ) );
+        assertEquals( 3, DefaultShader.RelocatorRemapper.classNameStart( "[[Ljava/lang/String;" ) );
+        assertEquals( 0, DefaultShader.RelocatorRemapper.classNameStart( "[I" ) );
+        assertEquals( 0, DefaultShader.RelocatorRemapper.classNameStart( "L;" ) );
+    }
+
+    public void testRemapperDoesNotAllocateForNamesItLeavesAlone()
+    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if ( !( threads instanceof com.sun.management.ThreadMXBean )
+            || !( (com.sun.management.ThreadMXBean) threads ).isThreadAllocatedMemorySupported() )
+        {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        allocations.setThreadAllocatedMemoryEnabled( true );
+
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "org.foo", "hidden.org.foo", null, null ) );
+        relocators.add( new SimpleRelocator( "com.foo", "hidden.com.foo", null, null ) );
+
+        DefaultShader.RelocatorRemapper remapper = new DefaultShader.RelocatorRemapper( relocators );
+        String[] names = { "java/lang/String", "Ljava/lang/Object;", "[[Ljava/util/List;", "org.bar.Baz",
+            "META-INF/MANIFEST.MF", "(Ljava/lang/String;)V" };
+
+        // warm up, the first calls may load classes
+        for ( int i = 0; i < 1000; i++ )
+        {
+            remapper.mapValue( names[i % names.length] );
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes( thread );
+        for ( int i = 0; i < 100000; i++ )
+        {
+            remapper.mapValue( names[i % names.length] );
+        }
+        long allocated = allocations.getThreadAllocatedBytes( thread ) - before;
+
+        // leave room for the measurement itself, but not for one object per call
+        assertTrue( allocated + " bytes allocated", allocated < 10000 );
+    }
+
+    public void testRelocatedClassesAreReusedFromTheCache()
+        throws Exception
+    {
+        File cacheDirectory = new File( "target/shade-cache-test" );
+        FileUtils.deleteDirectory( cacheDirectory );
+        File uncached = new File( "target/foo-relocate-uncached.jar" );
+        File cached = new File( "target/foo-relocate-cached.jar" );
+
+        newShader().shade( relocatingShadeRequest( uncached, 1 ) );
+
+        ShadeRequest shadeRequest = relocatingShadeRequest( cached, 2 );
+        shadeRequest.setRelocationCacheDirectory( cacheDirectory );
+        newShader().shade( shadeRequest );
+
+        assertEquals( readEntries( uncached ), readEntries( cached ) );
+        // one cache file per input jar
+        assertEquals( 3, cacheDirectory.listFiles().length );
+
+        newShader().shade( shadeRequest );
+
+        assertEquals( readEntries( uncached ), readEntries( cached ) );
+
+        // make sure the cached classes are the ones being used
+        byte[] marker = { 1, 2, 3 };
+        for ( File file : cacheDirectory.listFiles() )
+        {
+            replaceContent( file, marker );
+        }
+        newShader().shade( shadeRequest );
+
+        JarFile jar = new JarFile( cached );
+        try
+        {
+            assertTrue( Arrays.equals( marker, read( jar, "_plexus/util/__cli/Commandline.class" ) ) );
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    public void testClassesFilteredOutBeforeAreRelocatedFromTheCache()
+        throws Exception
+    {
+        File cacheDirectory = new File( "target/shade-cache-filter-test" );
+        FileUtils.deleteDirectory( cacheDirectory );
+        File uncached = new File( "target/foo-relocate-unfiltered-uncached.jar" );
+        File cached = new File( "target/foo-relocate-unfiltered-cached.jar" );
+
+        newShader().shade( relocatingShadeRequest( uncached, 1 ) );
+
+        ShadeRequest shadeRequest = relocatingShadeRequest( cached, 1 );
+        shadeRequest.setRelocationCacheDirectory( cacheDirectory );
+        List<Filter> filters = new ArrayList<Filter>();
+        filters.add( new SimpleFilter( Collections.singleton( new File( "src/test/jars/plexus-utils-1.4.1.jar" ) ), null,
+                                       Collections.singleton( "org/codehaus/plexus/util/cli/**" ) ) );
+        shadeRequest.setFilters( filters );
+        newShader().shade( shadeRequest );
+
+        shadeRequest.setFilters( new ArrayList<Filter>() );
+        newShader().shade( shadeRequest );
+
+        assertEquals( readEntries( uncached ), readEntries( cached ) );
+    }
+
+    public void testUnusedCacheFilesAreEvicted()
+        throws Exception
+    {
+        File cacheDirectory = new File( "target/shade-cache-evict-test" );
+        FileUtils.deleteDirectory( cacheDirectory );
+        cacheDirectory.mkdirs();
+        long time = System.currentTimeMillis() - 100000;
+        for ( int i = 0; i < 5; i++ )
+        {
+            File file = new File( cacheDirectory, "old-" + i + ".zip" );
+            FileUtils.fileWrite( file.getPath(), "UTF-8", "" );
+            file.setLastModified( time + i * 1000 );
+        }
+
+        ShadeRequest shadeRequest = relocatingShadeRequest( new File( "target/foo-relocate-evict.jar" ), 1 );
+        shadeRequest.setRelocationCacheDirectory( cacheDirectory );
+        newShader().shade( shadeRequest );
+
+        // the three files of this build, and the three most recently used of the others
+        Set<String> names = new TreeSet<String>( Arrays.asList( cacheDirectory.list() ) );
+        assertEquals( names.toString(), 6, names.size() );
+        assertTrue( names.containsAll( Arrays.asList( "old-2.zip", "old-3.zip", "old-4.zip" ) ) );
+    }
+
+    public void testClassesWithoutRelocatableNamesAreCopiedUnchanged()
+        throws Exception
+    {
+        File original = new File( "src/test/jars/plexus-utils-1.4.1.jar" );
+        File file = new File( "target/foo-copy-untouched-classes.jar" );
+
+        Set<File> set = new LinkedHashSet<File>();
+        set.add( original );
+
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "org/codehaus/plexus/util/cli", "hidden/cli", null, null ) );
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars( set );
+        shadeRequest.setUberJar( file );
+        shadeRequest.setFilters( new ArrayList<Filter>() );
+        shadeRequest.setRelocators( relocators );
+        shadeRequest.setResourceTransformers( new ArrayList<ResourceTransformer>() );
+
+        newShader().shade( shadeRequest );
+
+        JarFile originalJar = new JarFile( original );
+        JarFile shadedJar = new JarFile( file );
+        try
+        {
+            // does not reference the relocated package
+            assertTrue( Arrays.equals( read( originalJar, "org/codehaus/plexus/util/Base64.class" ),
+                                       read( shadedJar, "org/codehaus/plexus/util/Base64.class" ) ) );
+
+            // relocated
+            assertNotNull( shadedJar.getEntry( "hidden/cli/Commandline.class" ) );
+            assertNull( shadedJar.getEntry( "org/codehaus/plexus/util/cli/Commandline.class" ) );
+        }
+        finally
+        {
+            originalJar.close();
+            shadedJar.close();
+        }
+    }
+
+    public void testUntouchedEntriesAreCopiedCompressed()
+        throws Exception
+    {
+        File original = new File( "target/foo-raw-copy-input.jar" );
+        File file = new File( "target/foo-raw-copy.jar" );
+
+        // compressed differently than the shaded jar would, so that a copy can be told apart
+        StringBuilder text = new StringBuilder();
+        for ( int i = 0; i < 20000; i++ )
+        {
+            text.append( i ).append( ' ' );
+        }
+        byte[] resource = text.toString().getBytes( "UTF-8" );
+        ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( original ) );
+        try
+        {
+            zos.setLevel( Deflater.BEST_SPEED );
+            zos.putNextEntry( new ZipEntry( "org/foo/data.txt" ) );
+            zos.write( resource );
+            zos.putNextEntry( new ZipEntry( "org/foo/Data.class" ) );
+            zos.write( resource );
+        }
+        finally
+        {
+            zos.close();
+        }
+
+        Set<File> set = new LinkedHashSet<File>();
+        set.add( original );
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars( set );
+        shadeRequest.setUberJar( file );
+        shadeRequest.setFilters( new ArrayList<Filter>() );
+        shadeRequest.setRelocators( new ArrayList<Relocator>() );
+        shadeRequest.setResourceTransformers( new ArrayList<ResourceTransformer>() );
+
+        newShader().shade( shadeRequest );
+
+        ZipFile originalZip = new ZipFile( original );
+        JarFile shadedJar = new JarFile( file );
+        try
+        {
+            for ( String name : Arrays.asList( "org/foo/data.txt", "org/foo/Data.class" ) )
+            {
+                assertEquals( name, originalZip.getEntry( name ).getCompressedSize(),
+                              shadedJar.getEntry( name ).getCompressedSize() );
+                assertTrue( name, Arrays.equals( resource, read( shadedJar, name ) ) );
+            }
+            // readable as a stream too
+            assertEquals( shadedJar.size(), readEntries( file ).size() );
+        }
+        finally
+        {
+            originalZip.close();
+            shadedJar.close();
+        }
+    }
+
+    public void testUncompressedShadedJarStoresAllEntries()
+        throws Exception
+    {
+        File compressed = new File( "target/foo-relocate-compressed.jar" );
+        File uncompressed = new File( "target/foo-relocate-uncompressed.jar" );
+
+        newShader().shade( relocatingShadeRequest( compressed, 1 ) );
+
+        ShadeRequest shadeRequest = relocatingShadeRequest( uncompressed, 1 );
+        shadeRequest.setUncompressed( true );
+        newShader().shade( shadeRequest );
+
+        assertEquals( readEntries( compressed ), readEntries( uncompressed ) );
+        ZipFile zip = new ZipFile( uncompressed );
+        try
+        {
+            for ( Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = e.nextElement();
+                assertEquals( entry.getName(), ZipEntry.STORED, entry.getMethod() );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        assertTrue( uncompressed.length() > compressed.length() );
+    }
+
+    public void testMetricsReportListsEveryJar()
+        throws Exception
+    {
+        File report = new File( "target/shade-metrics-test/foo-relocate-metrics.json" );
+        report.delete();
+
+        ShadeRequest shadeRequest = relocatingShadeRequest( new File( "target/foo-relocate-metrics.jar" ), 4 );
+        shadeRequest.setMetricsReport( report );
+        newShader().shade( shadeRequest );
+
+        String json = FileUtils.fileRead( report, "UTF-8" );
+        assertTrue( json, json.contains( "\"threads\": 4" ) );
+        assertTrue( json, json.contains( "\"relocate\": " ) );
+        for ( File jar : shadeRequest.getJars() )
+        {
+            assertTrue( json, json.contains( "\"file\": \"" + jar.getPath().replace( "\\", "\\\\" ) + "\"" ) );
+        }
+        // directories are counted as entries of test-project-1.0-SNAPSHOT.jar, but not as written entries
+        assertTrue( json, json.contains( "\"entries\": 14, \"written\": " ) );
+        assertFalse( json, json.contains( "\"written\": 0," ) );
+    }
+
+    public void testManifestOfFirstJarIsUsed()
+        throws Exception
+    {
+        File file = new File( "target/foo-manifest.jar" );
+
+        final List<String> manifests = new ArrayList<String>();
+        List<ResourceTransformer> resourceTransformers = new ArrayList<ResourceTransformer>();
+        resourceTransformers.add( new ManifestResourceTransformer()
+        {
+            public void processResource( String resource, InputStream is, List<Relocator> relocators )
+                throws IOException
+            {
+                manifests.add( resource );
+                super.processResource( resource, is, relocators );
+            }
+        } );
+
+        ShadeRequest shadeRequest = manifestShadeRequest( file, resourceTransformers );
+        newShader().shade( shadeRequest );
+
+        // a custom manifest transformer sees the manifest of every jar
+        assertEquals( 2, manifests.size() );
+
+        resourceTransformers.clear();
+        resourceTransformers.add( new ManifestResourceTransformer() );
+        newShader().shade( shadeRequest );
+
+        assertEquals( readManifest( shadeRequest.getJars().iterator().next() ), readManifest( file ) );
+        JarInputStream jis = new JarInputStream( new FileInputStream( file ) );
+        try
+        {
+            // only found at the start of the jar
+            assertNotNull( jis.getManifest() );
+        }
+        finally
+        {
+            jis.close();
+        }
+    }
+
+    private Manifest readManifest( File file )
+        throws IOException
+    {
+        JarFile jar = new JarFile( file );
+        try
+        {
+            return jar.getManifest();
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    private ShadeRequest manifestShadeRequest( File uberJar, List<ResourceTransformer> resourceTransformers )
+    {
+        Set<File> set = new LinkedHashSet<File>();
+        set.add( new File( "src/test/jars/test-artifact-1.0-SNAPSHOT.jar" ) );
+        set.add( new File( "src/test/jars/plexus-utils-1.4.1.jar" ) );
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars( set );
+        shadeRequest.setUberJar( uberJar );
+        shadeRequest.setFilters( new ArrayList<Filter>() );
+        shadeRequest.setRelocators( new ArrayList<Relocator>() );
+        shadeRequest.setResourceTransformers( resourceTransformers );
+        return shadeRequest;
+    }
+
+    public void testOutputTimestampMakesJarReproducible()
+        throws Exception
+    {
+        File first = new File( "target/foo-reproducible-1.jar" );
+        File second = new File( "target/foo-reproducible-2.jar" );
+        // 2020-01-01T00:00:00Z
+        Date timestamp = new Date( 1577836800000L );
+
+        ShadeRequest shadeRequest = relocatingShadeRequest( first, 4 );
+        shadeRequest.setOutputTimestamp( timestamp );
+        newShader().shade( shadeRequest );
+        shadeRequest = relocatingShadeRequest( second, 1 );
+        shadeRequest.setOutputTimestamp( timestamp );
+        newShader().shade( shadeRequest );
+
+        assertTrue( Arrays.equals( FileUtils.fileRead( first, "ISO-8859-1" ).getBytes( "ISO-8859-1" ),
+                                   FileUtils.fileRead( second, "ISO-8859-1" ).getBytes( "ISO-8859-1" ) ) );
+
+        ZipFile zip = new ZipFile( first );
+        try
+        {
+            for ( Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = e.nextElement();
+                // stored as the same time of day wherever the jar is built
+                long time = entry.getTime() + TimeZone.getDefault().getOffset( entry.getTime() );
+                assertEquals( entry.getName(), timestamp.getTime(), time );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    private byte[] read( JarFile jar, String name )
+        throws IOException
+    {
+        InputStream is = jar.getInputStream( jar.getEntry( name ) );
+        try
+        {
+            return IOUtils.toByteArray( is );
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    /**
+     * Rewrites a zip file with the same entries, all having the given content.
+     */
+    private void replaceContent( File file, byte[] content )
+        throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile( file );
+        try
+        {
+            for ( Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); )
+            {
+                names.add( e.nextElement().getName() );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( file ) );
+        try
+        {
+            for ( String name : names )
+            {
+                zos.putNextEntry( new ZipEntry( name ) );
+                zos.write( content );
+            }
+        }
+        finally
+        {
+            zos.close();
+        }
+    }
+
+    private ShadeRequest relocatingShadeRequest( File uberJar, int threads )
+    {
+        Set<File> set = new LinkedHashSet<File>();
+        set.add( new File( "src/test/jars/test-project-1.0-SNAPSHOT.jar" ) );
+        set.add( new File( "src/test/jars/plexus-utils-1.4.1.jar" ) );
+        set.add( new File( "src/test/jars/test-artifact-1.0-SNAPSHOT.jar" ) );
+
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "org/codehaus/plexus/util/", "_plexus/util/__", null,
+                                             Arrays.<String>asList() ) );
+
+        List<ResourceTransformer> resourceTransformers = new ArrayList<ResourceTransformer>();
+        resourceTransformers.add( new ComponentsXmlResourceTransformer() );
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars( set );
+        shadeRequest.setUberJar( uberJar );
+        shadeRequest.setFilters( new ArrayList<Filter>() );
+        shadeRequest.setRelocators( relocators );
+        shadeRequest.setResourceTransformers( resourceTransformers );
+        shadeRequest.setThreads( threads );
+        return shadeRequest;
+    }
+
+    /**
+     * @return the name and content of every entry, in the order they appear in the jar.
+     */
+    private List<String> readEntries( File file )
+        throws IOException
+    {
+        List<String> entries = new ArrayList<String>();
+        JarInputStream jis = new JarInputStream( new FileInputStream( file ) );
+        try
+        {
+            for ( JarEntry entry = jis.getNextJarEntry(); entry != null; entry = jis.getNextJarEntry() )
+            {
+                entries.add( entry.getName() + "=" + Arrays.hashCode( IOUtils.toByteArray( jis ) ) );
+            }
+        }
+        finally
+        {
+            jis.close();
+        }
+        return entries;
+    }
+
+    /**
+     * @return the name, method, CRC and compressed size of every entry, in the order they appear in the jar.
+     */
+    private List<String> readCompression( File file )
+        throws IOException
+    {
+        List<String> entries = new ArrayList<String>();
+        ZipFile zip = new ZipFile( file );
+        try
+        {
+            for ( Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry entry = e.nextElement();
+                entries.add( entry.getName() + ":" + entry.getMethod() + ":" + entry.getCrc() + ":"
+                    + entry.getCompressedSize() );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return entries;
+    }
+
     private void testNumberOfShadedDeps( int i, File file )
         throws Exception
     {
@@ -0,0 +1,135 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Test for {@link InputJar}.
+ */
+public class InputJarTest
+    extends TestCase
+{
+    private static final File JAR = new File( "src/test/jars/plexus-utils-1.4.1.jar" );
+
+    public void testReadsSameEntriesAsZipFile()
+        throws Exception
+    {
+        assertSameAsZipFile( JAR, JAR );
+    }
+
+    public void testReadsJarWithDataInFront()
+        throws Exception
+    {
+        File file = new File( "target/input-jar-with-preamble.jar" );
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes( "UTF-8" ) );
+            InputStream in = new FileInputStream( JAR );
+            try
+            {
+                IOUtil.copy( in, out );
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        assertSameAsZipFile( JAR, file );
+    }
+
+    public void testRejectsOtherFiles()
+        throws Exception
+    {
+        try
+        {
+            new InputJar( new File( "pom.xml" ) ).close();
+            fail( "not a jar" );
+        }
+        catch ( ZipException e )
+        {
+            // expected
+        }
+    }
+
+    private void assertSameAsZipFile( File expected, File actual )
+        throws IOException
+    {
+        ZipFile zipFile = new ZipFile( expected );
+        InputJar inputJar = new InputJar( actual );
+        try
+        {
+            List<String> names = new ArrayList<String>();
+            for ( Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); )
+            {
+                names.add( e.nextElement().getName() );
+            }
+            List<String> actualNames = new ArrayList<String>();
+            for ( ZipArchiveEntry entry : inputJar.getEntries() )
+            {
+                actualNames.add( entry.getName() );
+
+                ZipEntry zipEntry = zipFile.getEntry( entry.getName() );
+                assertEquals( entry.getName(), zipEntry.getCrc(), entry.getCrc() );
+                assertEquals( entry.getName(), zipEntry.getCompressedSize(), entry.getCompressedSize() );
+                assertEquals( entry.getName(), zipEntry.getCompressedSize(), inputJar.getRawContent( entry ).length );
+                InputStream in = zipFile.getInputStream( zipEntry );
+                try
+                {
+                    assertTrue( entry.getName(),
+                                Arrays.equals( IOUtil.toByteArray( in ), inputJar.getContent( entry ) ) );
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+            assertEquals( names, actualNames );
+        }
+        finally
+        {
+            zipFile.close();
+            inputJar.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.apache.maven.plugins.shade;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
+
+/**
+ * Test for {@link RelocatorMatcher}.
+ */
+public class RelocatorMatcherTest
+    extends TestCase
+{
+    private static final String[] NAMES =
+        { "org/foo/Class", "org/foo/Class.class", "org/foo/bar/Class", "org.foo.Class", "org.foo.bar.Class",
+            "org/foo/Excluded", "org.foo.Excluded", "org/foo/public/Class", "org/foobar/Class", "org/Foo/Class",
+            "/org/foo/mass.properties", "/org/foo/bar/mass.properties", "com/foo/Class", "com.foo.Class",
+            "java/lang/String", "org", "org/", "", "/", "META-INF/org.foo.xml", "(I)Lorg/foo/bar/Class;" };
+
+    public void testFindsSameRelocatorAsLinearScan()
+    {
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "com.foo", null, null, null ) );
+        relocators.add( new SimpleRelocator( "org.foo.bar", "first", null, null ) );
+        relocators.add( new SimpleRelocator( "org.foo", null, null,
+                                             Arrays.asList( "org.foo.Excluded", "org.foo.public.*" ) ) );
+        relocators.add( new SimpleRelocator( "org.foo", "second", null, null ) );
+        relocators.add( new SimpleRelocator( "org", "third", Arrays.asList( "org.foobar.*" ), null ) );
+
+        assertSameAsLinearScan( relocators );
+    }
+
+    public void testAlwaysAsksUnindexedRelocators()
+    {
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "org.foo", "first", null, null ) );
+        relocators.add( new SimpleRelocator( "^META-INF/org.foo.xml$", "META-INF/hidden.org.foo.xml", null, null,
+                                             true ) );
+        relocators.add( new SimpleRelocator( "Lorg/foo", "Lhidden/org/foo", null, null, true ) );
+        relocators.add( new SimpleRelocator( "com.foo", null, null, null ) );
+
+        assertSameAsLinearScan( relocators );
+    }
+
+    public void testEmptyPatternMatchesEverything()
+    {
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "org.foo", "first", null, null ) );
+        relocators.add( new SimpleRelocator( "", "everything", null, null ) );
+
+        assertSameAsLinearScan( relocators );
+    }
+
+    public void testCanMatchClassFile()
+    {
+        byte[] classFile = { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE };
+
+        assertFalse( new RelocatorMatcher( Collections.<Relocator>emptyList() ).canMatchClassFile( classFile ) );
+
+        List<Relocator> relocators = new ArrayList<Relocator>();
+        relocators.add( new SimpleRelocator( "^META-INF/org.foo.xml$", null, null, null, true ) );
+        // raw string relocators could match anything
+        assertTrue( new RelocatorMatcher( relocators ).canMatchClassFile( classFile ) );
+    }
+
+    private void assertSameAsLinearScan( List<Relocator> relocators )
+    {
+        RelocatorMatcher matcher = new RelocatorMatcher( relocators );
+        for ( String name : NAMES )
+        {
+            assertSame( name, linearFindPathRelocator( relocators, name ), matcher.findPathRelocator( name ) );
+            assertSame( name, linearFindRelocator( relocators, name ), matcher.findRelocator( name ) );
+            if ( linearFindRelocator( relocators, name ) != null )
+            {
+                assertTrue( name, matcher.mayMatch( name, 0, name.length() ) );
+            }
+        }
+    }
+
+    private static Relocator linearFindPathRelocator( List<Relocator> relocators, String name )
+    {
+        for ( Relocator r : relocators )
+        {
+            if ( r.canRelocatePath( name ) )
+            {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private static Relocator linearFindRelocator( List<Relocator> relocators, String name )
+    {
+        for ( Relocator r : relocators )
+        {
+            if ( r.canRelocateClass( name ) || r.canRelocatePath( name ) )
+            {
+                return r;
+            }
+        }
+        return null;
+    }
+}
@@ -23,9 +23,42 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
 import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.vafer.jdependency.Clazz;
+import org.vafer.jdependency.Clazzpath;
+import org.vafer.jdependency.ClazzpathUnit;
 
 import junit.framework.Assert;
 
@@ -97,4 +130,482 @@ public class MinijarFilterTest
         Assert.assertEquals( "Minimized 0 -> 0", logCaptor.getValue() );
 
     }
+
+    @Test
+    public void removesTheClassesJdependencyFindsUnused()
+        throws IOException
+    {
+        File artifactJar = new File( "src/test/jars/test-project-1.0-SNAPSHOT.jar" );
+        List<File> dependencyJars = new ArrayList<File>();
+        dependencyJars.add( new File( "src/test/jars/plexus-utils-1.4.1.jar" ) );
+        dependencyJars.add( new File( "src/test/jars/test-artifact-1.0-SNAPSHOT.jar" ) );
+        MavenProject project = createProject( artifactJar, dependencyJars );
+
+        Set<String> expected = removedByJdependency( artifactJar, dependencyJars );
+        Assert.assertFalse( expected.isEmpty() );
+        Assert.assertFalse( expected.contains( "org/codehaus/plexus/util/StringUtils.class" ) );
+
+        File cacheDirectory = new File( "target/minijar-filter-test" );
+        FileUtils.deleteDirectory( cacheDirectory );
+        ClassReferences.clearReadJars();
+
+        Log log = mock( Log.class );
+        Assert.assertEquals( expected, removed( new MinijarFilter( project, log ), dependencyJars ) );
+        Assert.assertEquals( expected, removed( new MinijarFilter( project, log, null, options( 4, cacheDirectory ) ),
+                                                dependencyJars ) );
+        // one file per dependency, none for the project's jar which changes on every build
+        Assert.assertEquals( 2, cacheDirectory.list().length );
+        // now from the cache directory
+        ClassReferences.clearReadJars();
+        Assert.assertEquals( expected, removed( new MinijarFilter( project, log, null, options( 1, cacheDirectory ) ),
+                                                dependencyJars ) );
+    }
+
+    @Test
+    public void readsEachJarOncePerBuild()
+        throws IOException
+    {
+        File directory = new File( "target/minijar-filter-test-read-jars" );
+        FileUtils.deleteDirectory( directory );
+        File jar = new File( directory, "plexus-utils.jar" );
+        FileUtils.copyFile( new File( "src/test/jars/plexus-utils-1.4.1.jar" ), jar );
+        File cacheDirectory = new File( directory, "cache" );
+
+        ClassReferences classReferences = ClassReferences.read( jar, cacheDirectory );
+        // as by another module
+        Assert.assertSame( classReferences, ClassReferences.read( jar, new File( directory, "other-cache" ) ) );
+        Assert.assertNotSame( classReferences, ClassReferences.read( jar, null ) );
+
+        Assert.assertTrue( jar.setLastModified( jar.lastModified() - 10000 ) );
+        ClassReferences changed = ClassReferences.read( jar, cacheDirectory );
+        Assert.assertNotSame( classReferences, changed );
+        Assert.assertEquals( classReferences.size(), changed.size() );
+    }
+
+    @Test
+    public void keepsSpecificallyIncludedClasses()
+        throws IOException
+    {
+        File artifactJar = new File( "src/test/jars/test-project-1.0-SNAPSHOT.jar" );
+        File plexusUtils = new File( "src/test/jars/plexus-utils-1.4.1.jar" );
+        MavenProject project = createProject( artifactJar, Collections.singletonList( plexusUtils ) );
+        List<SimpleFilter> filters = new ArrayList<SimpleFilter>();
+        filters.add( new SimpleFilter( Collections.singleton( plexusUtils ), null,
+                                       Collections.singleton( "org/codehaus/plexus/util/IOUtil*" ) ) );
+        filters.add( new SimpleFilter( Collections.singleton( plexusUtils ),
+                                       Collections.singleton( "org/codehaus/plexus/util/xml/**" ), null ) );
+        // does not apply to plexus-utils
+        filters.add( new SimpleFilter( Collections.singleton( artifactJar ),
+                                       Collections.singleton( "org/codehaus/plexus/util/cli/**" ), null ) );
+
+        Set<String> removed = removed( new MinijarFilter( project, mock( Log.class ), filters, options( 2, null ) ),
+                                       Collections.singletonList( plexusUtils ) );
+
+        Assert.assertTrue( removed.contains( "org/codehaus/plexus/util/cli/Commandline.class" ) );
+        for ( String name : removed )
+        {
+            Assert.assertFalse( name, name.startsWith( "org/codehaus/plexus/util/xml/" ) );
+        }
+    }
+
+    @Test
+    public void keepsOnlyWhatEntryPointsReach()
+        throws IOException
+    {
+        File directory = new File( "target/minijar-filter-test-entry-points" );
+        FileUtils.deleteDirectory( directory );
+        // noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        File app = new File( directory, "app.jar" );
+        JarOutputStream jos = new JarOutputStream( new FileOutputStream( app ) );
+        try
+        {
+            jos.putNextEntry( new JarEntry( "META-INF/MANIFEST.MF" ) );
+            jos.write( "Manifest-Version: 1.0\nMain-Class: app.Main\n".getBytes( "UTF-8" ) );
+            jos.putNextEntry( new JarEntry( "META-INF/services/lib.Spi" ) );
+            jos.write( "# the plugin\napp.Plugin # registered\n".getBytes( "UTF-8" ) );
+            addClass( jos, "app/Main", "lib/A" );
+            addClass( jos, "app/Plugin", "lib/C" );
+            addClass( jos, "app/Unused", "lib/B" );
+            addClass( jos, "app/api/Api", null );
+        }
+        finally
+        {
+            IOUtil.close( jos );
+        }
+        File lib = new File( directory, "lib.jar" );
+        jos = new JarOutputStream( new FileOutputStream( lib ) );
+        try
+        {
+            addClass( jos, "lib/A", null );
+            addClass( jos, "lib/B", null );
+            addClass( jos, "lib/C", null );
+            addClass( jos, "lib/D", null );
+        }
+        finally
+        {
+            IOUtil.close( jos );
+        }
+        MavenProject project = createProject( app, Collections.singletonList( lib ) );
+        List<File> jars = new ArrayList<File>();
+        jars.add( app );
+        jars.add( lib );
+
+        Set<String> removed =
+            removed( new MinijarFilter( project, mock( Log.class ), null, options( 1, null ) ), jars );
+        Assert.assertEquals( Collections.singleton( "lib/D.class" ), removed );
+
+        MinijarOptions options = options( 1, null );
+        options.setEntryPoints( Collections.singletonList( "app.api.*" ) );
+        removed = removed( new MinijarFilter( project, mock( Log.class ), null, options ), jars );
+        Assert.assertEquals( new TreeSet<String>( Arrays.asList( "app/Unused.class", "lib/B.class", "lib/D.class" ) ),
+                             removed );
+
+        // the classes specifically included in the project's jar are kept
+        List<SimpleFilter> filters = Collections.singletonList(
+            new SimpleFilter( Collections.singleton( app ), Collections.singleton( "app/Unused" ), null ) );
+        removed = removed( new MinijarFilter( project, mock( Log.class ), filters, options ), jars );
+        Assert.assertEquals( new TreeSet<String>( Arrays.asList( "lib/B.class", "lib/D.class" ) ), removed );
+
+        // the Main-Class of the shaded manifest replaces that of the project's
+        options.setMainClass( "app.Unused" );
+        removed = removed( new MinijarFilter( project, mock( Log.class ), null, options ), jars );
+        Assert.assertEquals( new TreeSet<String>( Arrays.asList( "app/Main.class", "lib/A.class", "lib/D.class" ) ),
+                             removed );
+    }
+
+    @Test
+    public void keepsServiceProvidersAndNamedClasses()
+        throws IOException
+    {
+        File directory = new File( "target/minijar-filter-test-services" );
+        FileUtils.deleteDirectory( directory );
+        // noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        File app = new File( directory, "app.jar" );
+        JarOutputStream jos = new JarOutputStream( new FileOutputStream( app ) );
+        try
+        {
+            ClassWriter cw = new ClassWriter( 0 );
+            cw.visit( Opcodes.V1_5, Opcodes.ACC_PUBLIC, "app/Main", null, "java/lang/Object", null );
+            cw.visitField( Opcodes.ACC_PRIVATE, "api", "Llib/Api;", null, null ).visitEnd();
+            cw.visitField( Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "LOADED", "Ljava/lang/String;", null,
+                           "lib.Loaded" ).visitEnd();
+            cw.visitEnd();
+            jos.putNextEntry( new JarEntry( "app/Main.class" ) );
+            jos.write( cw.toByteArray() );
+        }
+        finally
+        {
+            IOUtil.close( jos );
+        }
+        File lib = new File( directory, "lib.jar" );
+        jos = new JarOutputStream( new FileOutputStream( lib ) );
+        try
+        {
+            jos.putNextEntry( new JarEntry( "META-INF/services/lib.Api" ) );
+            jos.write( "lib.ApiImpl\n".getBytes( "UTF-8" ) );
+            jos.putNextEntry( new JarEntry( "META-INF/services/lib.Unused" ) );
+            jos.write( "lib.UnusedImpl\n".getBytes( "UTF-8" ) );
+            jos.putNextEntry( new JarEntry( "META-INF/services/java.sql.Driver" ) );
+            jos.write( "lib.Driver\n".getBytes( "UTF-8" ) );
+            addClass( jos, "lib/Api", null );
+            addClass( jos, "lib/ApiImpl", "lib/Helper" );
+            addClass( jos, "lib/Helper", null );
+            addClass( jos, "lib/Unused", null );
+            addClass( jos, "lib/UnusedImpl", null );
+            addClass( jos, "lib/Driver", null );
+            addClass( jos, "lib/Loaded", null );
+            addClass( jos, "lib/Other", null );
+        }
+        finally
+        {
+            IOUtil.close( jos );
+        }
+        MavenProject project = createProject( app, Collections.singletonList( lib ) );
+        List<File> jars = Collections.singletonList( lib );
+
+        Set<String> removed =
+            removed( new MinijarFilter( project, mock( Log.class ), null, options( 1, null ) ), jars );
+        Assert.assertEquals( new TreeSet<String>( Arrays.asList( "lib/ApiImpl.class", "lib/Helper.class",
+                                                                 "lib/Unused.class", "lib/UnusedImpl.class",
+                                                                 "lib/Driver.class", "lib/Loaded.class",
+                                                                 "lib/Other.class" ) ), removed );
+
+        // lib.Unused is not used, java.sql.Driver is not in the jars
+        MinijarOptions options = options( 1, null );
+        options.setServiceProviders( true );
+        removed = removed( new MinijarFilter( project, mock( Log.class ), null, options ), jars );
+        Assert.assertEquals( new TreeSet<String>( Arrays.asList( "lib/Unused.class", "lib/UnusedImpl.class",
+                                                                 "lib/Loaded.class", "lib/Other.class" ) ),
+                             removed );
+
+        options.setNamedClasses( true );
+        removed = removed( new MinijarFilter( project, mock( Log.class ), null, options ), jars );
+        Assert.assertEquals( new TreeSet<String>( Arrays.asList( "lib/Unused.class", "lib/UnusedImpl.class",
+                                                                 "lib/Other.class" ) ), removed );
+    }
+
+    @Test
+    public void removesTheMembersNothingReaches()
+        throws IOException
+    {
+        File directory = new File( "target/minijar-filter-test-members" );
+        FileUtils.deleteDirectory( directory );
+        // noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        File app = new File( directory, "app.jar" );
+        JarOutputStream jos = new JarOutputStream( new FileOutputStream( app ) );
+        try
+        {
+            ClassWriter cw = new ClassWriter( ClassWriter.COMPUTE_MAXS );
+            cw.visit( Opcodes.V1_5, Opcodes.ACC_PUBLIC, "app/Main", null, "java/lang/Object", null );
+            MethodVisitor mv = cw.visitMethod( Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main", "()V", null, null );
+            mv.visitCode();
+            mv.visitMethodInsn( Opcodes.INVOKESTATIC, "lib/Util", "used", "()V", false );
+            mv.visitMethodInsn( Opcodes.INVOKESTATIC, "app/Helper", "used", "()V", false );
+            mv.visitInsn( Opcodes.RETURN );
+            mv.visitMaxs( 0, 0 );
+            mv.visitEnd();
+            cw.visitEnd();
+            jos.putNextEntry( new JarEntry( "app/Main.class" ) );
+            jos.write( cw.toByteArray() );
+
+            cw = new ClassWriter( ClassWriter.COMPUTE_MAXS );
+            cw.visit( Opcodes.V1_5, Opcodes.ACC_PUBLIC, "app/Helper", null, "java/lang/Object", null );
+            for ( String method : Arrays.asList( "used", "unused" ) )
+            {
+                mv = cw.visitMethod( Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, method, "()V", null, null );
+                mv.visitCode();
+                mv.visitInsn( Opcodes.RETURN );
+                mv.visitMaxs( 0, 0 );
+                mv.visitEnd();
+            }
+            cw.visitEnd();
+            jos.putNextEntry( new JarEntry( "app/Helper.class" ) );
+            jos.write( cw.toByteArray() );
+        }
+        finally
+        {
+            IOUtil.close( jos );
+        }
+        File lib = new File( directory, "lib.jar" );
+        jos = new JarOutputStream( new FileOutputStream( lib ) );
+        try
+        {
+            ClassWriter cw = new ClassWriter( ClassWriter.COMPUTE_MAXS );
+            cw.visit( Opcodes.V1_5, Opcodes.ACC_PUBLIC, "lib/Util", null, "java/lang/Object", null );
+            cw.visitField( Opcodes.ACC_STATIC, "count", "I", null, null ).visitEnd();
+            cw.visitField( Opcodes.ACC_STATIC, "unusedCount", "I", null, null ).visitEnd();
+            MethodVisitor mv = cw.visitMethod( Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "used", "()V", null, null );
+            mv.visitCode();
+            mv.visitFieldInsn( Opcodes.GETSTATIC, "lib/Util", "count", "I" );
+            mv.visitInsn( Opcodes.POP );
+            mv.visitInsn( Opcodes.RETURN );
+            mv.visitMaxs( 0, 0 );
+            mv.visitEnd();
+            for ( String method : Arrays.asList( "unused", "reflective" ) )
+            {
+                mv = cw.visitMethod( Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, method, "()V", null, null );
+                mv.visitCode();
+                mv.visitFieldInsn( Opcodes.GETSTATIC, "lib/Util", "unusedCount", "I" );
+                mv.visitInsn( Opcodes.POP );
+                mv.visitInsn( Opcodes.RETURN );
+                mv.visitMaxs( 0, 0 );
+                mv.visitEnd();
+            }
+            // may be called by the JDK
+            mv = cw.visitMethod( Opcodes.ACC_PUBLIC, "toString", "()Ljava/lang/String;", null, null );
+            mv.visitCode();
+            mv.visitLdcInsn( "util" );
+            mv.visitInsn( Opcodes.ARETURN );
+            mv.visitMaxs( 0, 0 );
+            mv.visitEnd();
+            cw.visitEnd();
+            jos.putNextEntry( new JarEntry( "lib/Util.class" ) );
+            jos.write( cw.toByteArray() );
+        }
+        finally
+        {
+            IOUtil.close( jos );
+        }
+        MavenProject project = createProject( app, Collections.singletonList( lib ) );
+
+        MinijarOptions options = options( 1, null );
+        MinijarFilter filter = new MinijarFilter( project, mock( Log.class ), null, options );
+        Assert.assertFalse( filter.hasFilteredMembers( "lib/Util.class" ) );
+
+        options.setKeepRules( Collections.singletonList( "lib.Util#reflective" ) );
+        filter = new MinijarFilter( project, mock( Log.class ), null, options );
+        Assert.assertFalse( filter.hasFilteredMembers( "app/Main.class" ) );
+        Assert.assertFalse( filter.hasFilteredMembers( "app/Helper.class" ) );
+        Assert.assertTrue( filter.hasFilteredMembers( "lib/Util.class" ) );
+
+        // the classes of the project keep all their members, even when they are not entry points
+        options.setEntryPoints( Collections.singletonList( "app.Main" ) );
+        MinijarFilter fromEntryPoints = new MinijarFilter( project, mock( Log.class ), null, options );
+        Assert.assertFalse( fromEntryPoints.isFiltered( "app/Helper.class" ) );
+        Assert.assertFalse( fromEntryPoints.hasFilteredMembers( "app/Helper.class" ) );
+        Assert.assertTrue( fromEntryPoints.hasFilteredMembers( "lib/Util.class" ) );
+
+        final Set<String> members = new TreeSet<String>();
+        ZipFile zip = new ZipFile( lib );
+        try
+        {
+            byte[] content = IOUtil.toByteArray( zip.getInputStream( zip.getEntry( "lib/Util.class" ) ) );
+            content = filter.filterMembers( "lib/Util.class", content );
+            new ClassReader( content ).accept( new ClassVisitor( Opcodes.ASM5 )
+            {
+                public FieldVisitor visitField( int access, String name, String desc, String signature, Object value )
+                {
+                    members.add( name );
+                    return null;
+                }
+
+                public MethodVisitor visitMethod( int access, String name, String desc, String signature,
+                                                  String[] exceptions )
+                {
+                    members.add( name + desc );
+                    return null;
+                }
+            }, 0 );
+        }
+        finally
+        {
+            zip.close();
+        }
+        // reflective() reads unusedCount
+        Assert.assertEquals( new TreeSet<String>( Arrays.asList( "count", "unusedCount", "used()V", "reflective()V",
+                                                                 "toString()Ljava/lang/String;" ) ), members );
+    }
+
+    private static MinijarOptions options( int threads, File cacheDirectory )
+    {
+        MinijarOptions options = new MinijarOptions();
+        options.setThreads( threads );
+        options.setCacheDirectory( cacheDirectory );
+        return options;
+    }
+
+    private static void addClass( JarOutputStream jos, String name, String referenced )
+        throws IOException
+    {
+        ClassWriter cw = new ClassWriter( 0 );
+        cw.visit( Opcodes.V1_5, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null );
+        if ( referenced != null )
+        {
+            cw.visitField( Opcodes.ACC_PRIVATE, "field", "L" + referenced + ";", null, null ).visitEnd();
+        }
+        cw.visitEnd();
+        jos.putNextEntry( new JarEntry( name + ".class" ) );
+        jos.write( cw.toByteArray() );
+    }
+
+    private static MavenProject createProject( File artifactJar, List<File> dependencyJars )
+    {
+        MavenProject project = new MavenProject();
+        project.setArtifact( createArtifact( "test-project", artifactJar ) );
+        Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+        for ( File jar : dependencyJars )
+        {
+            artifacts.add( createArtifact( jar.getName(), jar ) );
+        }
+        project.setArtifacts( artifacts );
+        return project;
+    }
+
+    private static Artifact createArtifact( String artifactId, File file )
+    {
+        Artifact artifact = new DefaultArtifact( "org.example", artifactId, "1.0", "compile", "jar", null,
+                                                 new DefaultArtifactHandler( "jar" ) );
+        artifact.setFile( file );
+        return artifact;
+    }
+
+    private static Set<String> removed( MinijarFilter filter, List<File> dependencyJars )
+        throws IOException
+    {
+        Set<String> removed = new TreeSet<String>();
+        for ( File jar : dependencyJars )
+        {
+            for ( String name : classFiles( jar ) )
+            {
+                if ( filter.isFiltered( name ) )
+                {
+                    removed.add( name );
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * The analysis minimizeJar made before it read the jars itself.
+     */
+    private static Set<String> removedByJdependency( File artifactJar, List<File> dependencyJars )
+        throws IOException
+    {
+        Clazzpath cp = new Clazzpath();
+        ClazzpathUnit artifactUnit = addUnit( cp, artifactJar );
+        for ( File jar : dependencyJars )
+        {
+            addUnit( cp, jar );
+        }
+        Set<Clazz> removable = cp.getClazzes();
+        Set<Clazz> kept = new HashSet<Clazz>( artifactUnit.getClazzes() );
+        kept.addAll( artifactUnit.getTransitiveDependencies() );
+        for ( Clazz clazz : kept )
+        {
+            for ( String name = clazz.getName(); name.contains( "." ); )
+            {
+                name = name.substring( 0, name.lastIndexOf( '.' ) );
+                removable.remove( new Clazz( name + ".package-info" ) );
+            }
+        }
+        removable.removeAll( kept );
+
+        Set<String> removed = new TreeSet<String>();
+        for ( Clazz clazz : removable )
+        {
+            removed.add( clazz.getName().replace( '.', '/' ) + ".class" );
+        }
+        return removed;
+    }
+
+    private static ClazzpathUnit addUnit( Clazzpath cp, File jar )
+        throws IOException
+    {
+        FileInputStream in = new FileInputStream( jar );
+        try
+        {
+            return cp.addClazzpathUnit( in, jar.getName() );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    private static List<String> classFiles( File jar )
+        throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        ZipFile zip = new ZipFile( jar );
+        try
+        {
+            for ( Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); )
+            {
+                String name = e.nextElement().getName();
+                if ( name.endsWith( ".class" ) )
+                {
+                    names.add( name );
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return names;
+    }
 }
@@ -0,0 +1,176 @@
+package org.apache.maven.plugins.shade.mojo;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Test for {@link ShadeBuildState}.
+ */
+public class ShadeBuildStateTest
+    extends TestCase
+{
+    private File directory;
+
+    private File input;
+
+    private File output;
+
+    private List<File> outputs;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = new File( "target/shade-build-state-test" );
+        FileUtils.deleteDirectory( directory );
+        directory.mkdirs();
+        input = new File( directory, "input.jar" );
+        output = new File( directory, "output.jar" );
+        outputs = Collections.singletonList( output );
+
+        FileUtils.fileWrite( input.getPath(), "UTF-8", "input" );
+    }
+
+    public void testUpToDateWhenNothingChanged()
+        throws Exception
+    {
+        shade( "config" );
+
+        output.delete();
+        ShadeBuildState state = newState( "config" );
+        assertTrue( state.isUpToDate( outputs ) );
+
+        state.restore( outputs );
+        assertEquals( "shaded", FileUtils.fileRead( output, "UTF-8" ) );
+    }
+
+    public void testNotUpToDateWhenConfigurationChanged()
+        throws Exception
+    {
+        shade( "config" );
+
+        assertFalse( newState( "other config" ).isUpToDate( outputs ) );
+    }
+
+    public void testNotUpToDateWhenInputChanged()
+        throws Exception
+    {
+        shade( "config" );
+
+        FileUtils.fileWrite( input.getPath(), "UTF-8", "changed" );
+
+        assertFalse( newState( "config" ).isUpToDate( outputs ) );
+    }
+
+    public void testUpToDateWhenInputIsPackagedAgainWithSameContent()
+        throws Exception
+    {
+        shade( "config" );
+
+        input.setLastModified( input.lastModified() - 10000 );
+
+        assertTrue( newState( "config" ).isUpToDate( outputs ) );
+    }
+
+    public void testUpToDateWhenInputIsStillThePreviousOutput()
+        throws Exception
+    {
+        shade( "config" );
+
+        // the shaded jar replaced the project's artifact, which was not packaged again
+        FileUtils.copyFile( output, input );
+
+        assertTrue( newState( "config", Collections.singletonMap( input, output ) ).isUpToDate( outputs ) );
+    }
+
+    public void testNotUpToDateWhenInputIsAnOutputItWasNotReplacedWith()
+        throws Exception
+    {
+        shade( "config" );
+
+        FileUtils.copyFile( output, input );
+
+        assertFalse( newState( "config" ).isUpToDate( outputs ) );
+    }
+
+    public void testNotUpToDateWithoutCommit()
+        throws Exception
+    {
+        ShadeBuildState state = newState( "config" );
+        state.recordInputs();
+        FileUtils.fileWrite( output.getPath(), "UTF-8", "shaded" );
+        state.save( outputs );
+
+        assertFalse( newState( "config" ).isUpToDate( outputs ) );
+    }
+
+    public void testDependencyReducedPomIsReusedUnlessChanged()
+        throws Exception
+    {
+        File pom = new File( directory, "dependency-reduced-pom.xml" );
+        FileUtils.fileWrite( pom.getPath(), "UTF-8", "<project/>" );
+
+        ShadeBuildState state = newState( "config" );
+        state.recordInputs();
+        FileUtils.fileWrite( output.getPath(), "UTF-8", "shaded" );
+        state.save( outputs );
+        state.commit( pom );
+
+        state = newState( "config" );
+        assertTrue( state.isUpToDate( outputs ) );
+        assertTrue( state.hasDependencyReducedPom() );
+        assertEquals( pom.getAbsoluteFile(), state.getDependencyReducedPom() );
+
+        FileUtils.fileWrite( pom.getPath(), "UTF-8", "<project></project>" );
+        assertNull( state.getDependencyReducedPom() );
+    }
+
+    private void shade( String fingerprint )
+        throws IOException
+    {
+        ShadeBuildState state = newState( fingerprint );
+        assertFalse( state.isUpToDate( outputs ) );
+        state.invalidate();
+        state.recordInputs();
+        FileUtils.fileWrite( output.getPath(), "UTF-8", "shaded" );
+        state.save( outputs );
+        state.commit( null );
+    }
+
+    private ShadeBuildState newState( String fingerprint )
+    {
+        return newState( fingerprint, Collections.<File, File>emptyMap() );
+    }
+
+    private ShadeBuildState newState( String fingerprint, Map<File, File> replacedInputs )
+    {
+        return new ShadeBuildState( new File( directory, "state" ), fingerprint, Arrays.asList( input ),
+                                    replacedInputs );
+    }
+}
@@ -0,0 +1,119 @@
+package org.apache.maven.plugins.shade.mojo;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Test for {@link ShadeCache}.
+ */
+public class ShadeCacheTest
+    extends TestCase
+{
+    private File directory;
+
+    private File cache;
+
+    protected void setUp()
+        throws Exception
+    {
+        directory = new File( "target/shade-cache-test" );
+        FileUtils.deleteDirectory( directory );
+        directory.mkdirs();
+        cache = new File( directory, "cache" );
+    }
+
+    public void testShadedFilesAreSharedBetweenLocations()
+        throws Exception
+    {
+        File input = write( "a/input.jar", "input" );
+        File output = write( "a/output.jar", "shaded" );
+
+        ShadeCache shadeCache = new ShadeCache( cache, "config", Arrays.asList( input ) );
+        List<File> outputs = Collections.singletonList( output );
+        assertFalse( shadeCache.restore( outputs ) );
+        shadeCache.store( outputs );
+
+        // the same dependencies somewhere else, e.g. on another machine
+        File otherInput = write( "b/input.jar", "input" );
+        File otherOutput = new File( directory, "b/output.jar" );
+
+        ShadeCache otherCache = new ShadeCache( cache, "config", Arrays.asList( otherInput ) );
+        assertEquals( shadeCache.getKey(), otherCache.getKey() );
+        assertTrue( otherCache.restore( Collections.singletonList( otherOutput ) ) );
+        assertEquals( "shaded", FileUtils.fileRead( otherOutput, "UTF-8" ) );
+    }
+
+    public void testKeyDependsOnConfigurationAndContent()
+        throws Exception
+    {
+        File input = write( "input.jar", "input" );
+        String key = new ShadeCache( cache, "config", Arrays.asList( input ) ).getKey();
+
+        assertFalse( key.equals( new ShadeCache( cache, "other config", Arrays.asList( input ) ).getKey() ) );
+
+        write( "input.jar", "changed" );
+        assertFalse( key.equals( new ShadeCache( cache, "config", Arrays.asList( input ) ).getKey() ) );
+    }
+
+    public void testStoringAgainKeepsFirstEntry()
+        throws Exception
+    {
+        File input = write( "input.jar", "input" );
+        File output = write( "output.jar", "first" );
+        List<File> outputs = Collections.singletonList( output );
+
+        new ShadeCache( cache, "config", Arrays.asList( input ) ).store( outputs );
+        write( "output.jar", "second" );
+        new ShadeCache( cache, "config", Arrays.asList( input ) ).store( outputs );
+
+        assertTrue( new ShadeCache( cache, "config", Arrays.asList( input ) ).restore( outputs ) );
+        assertEquals( "first", FileUtils.fileRead( output, "UTF-8" ) );
+    }
+
+    public void testIncompleteEntryIsNotRestored()
+        throws Exception
+    {
+        File input = write( "input.jar", "input" );
+        File output = write( "output.jar", "shaded" );
+        File sources = write( "sources.jar", "sources" );
+
+        new ShadeCache( cache, "config", Arrays.asList( input ) ).store( Collections.singletonList( output ) );
+
+        assertFalse( new ShadeCache( cache, "config", Arrays.asList( input ) ).restore( Arrays.asList( output,
+                                                                                                      sources ) ) );
+    }
+
+    private File write( String path, String content )
+        throws Exception
+    {
+        File file = new File( directory, path );
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite( file.getPath(), "UTF-8", content );
+        return file;
+    }
+}
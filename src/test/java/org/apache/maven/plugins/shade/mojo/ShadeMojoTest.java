@@ -29,6 +29,9 @@ import org.apache.maven.artifact.resolver.ArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.artifact.resolver.DefaultArtifactResolver;
 import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
 import org.apache.maven.plugins.shade.ShadeRequest;
 import org.apache.maven.plugins.shade.Shader;
 import org.apache.maven.plugins.shade.filter.Filter;
@@ -38,8 +41,10 @@ import org.apache.maven.plugins.shade.resource.ComponentsXmlResourceTransformer;
 import org.apache.maven.plugins.shade.resource.ResourceTransformer;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.PlexusTestCase;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
 
 import java.io.File;
+import java.io.StringReader;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.URL;
@@ -57,6 +62,28 @@ import java.util.Set;
 public class ShadeMojoTest
     extends PlexusTestCase
 {
+    public void testParseOutputTimestamp()
+        throws Exception
+    {
+        // 2020-01-01T00:00:00Z
+        long expected = 1577836800000L;
+        assertEquals( expected, ShadeMojo.parseOutputTimestamp( "2020-01-01T00:00:00Z" ).getTime() );
+        assertEquals( expected, ShadeMojo.parseOutputTimestamp( "2020-01-01T01:00:00+01:00" ).getTime() );
+        assertEquals( expected, ShadeMojo.parseOutputTimestamp( "1577836800" ).getTime() );
+        assertNull( ShadeMojo.parseOutputTimestamp( null ) );
+        assertNull( ShadeMojo.parseOutputTimestamp( "" ) );
+        assertNull( ShadeMojo.parseOutputTimestamp( "-" ) );
+        try
+        {
+            ShadeMojo.parseOutputTimestamp( "2020-01-01" );
+            fail( "no time" );
+        }
+        catch ( MojoExecutionException e )
+        {
+            // expected
+        }
+    }
+
     public void testShaderWithDefaultShadedPattern()
         throws Exception
     {
@@ -185,6 +212,43 @@ public class ShadeMojoTest
         assertTrue( filter.canFilter( new File( "myfaces-impl-2.0.1-SNAPSHOT-sources.jar" ) ) ); // sources jar
     }
 
+    public void testSharedCacheConfigurationDoesNotDependOnTheLocation()
+        throws Exception
+    {
+        assertEquals( sharedCacheConfiguration( new File( "/home/one/project" ) ),
+                      sharedCacheConfiguration( new File( "/home/two/project" ) ) );
+
+        String configuration = sharedCacheConfiguration( new File( "/home/one/project" ) );
+        assertFalse( configuration, configuration.contains( "outputFile" ) );
+        assertTrue( configuration, configuration.contains( "${basedir}/src/main/notice.txt" ) );
+    }
+
+    private String sharedCacheConfiguration( File basedir )
+        throws Exception
+    {
+        ShadeMojo mojo = new ShadeMojo();
+
+        MavenProject project = new MavenProject();
+        project.setFile( new File( basedir, "pom.xml" ) );
+        Field projectField = ShadeMojo.class.getDeclaredField( "project" );
+        projectField.setAccessible( true );
+        projectField.set( mojo, project );
+
+        String path = basedir.getAbsolutePath();
+        MojoExecution execution = new MojoExecution( new MojoDescriptor() );
+        execution.setConfiguration( Xpp3DomBuilder.build( new StringReader(
+            "<configuration><outputFile>" + path + "/target/shaded.jar</outputFile><transformers><transformer"
+                + " implementation=\"org.apache.maven.plugins.shade.resource.IncludeResourceTransformer\"><file>"
+                + path + "/src/main/notice.txt</file></transformer></transformers></configuration>" ) ) );
+        Field executionField = ShadeMojo.class.getDeclaredField( "mojoExecution" );
+        executionField.setAccessible( true );
+        executionField.set( mojo, execution );
+
+        Method method = ShadeMojo.class.getDeclaredMethod( "locationIndependentConfiguration" );
+        method.setAccessible( true );
+        return (String) method.invoke( mojo );
+    }
+
     public void shaderWithPattern( String shadedPattern, File jar )
         throws Exception
     {
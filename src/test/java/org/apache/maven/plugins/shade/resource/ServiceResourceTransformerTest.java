@@ -25,11 +25,13 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 
 import org.apache.commons.io.IOUtils;
@@ -150,4 +152,34 @@ public class ServiceResourceTransformerTest {
             tempJar.delete();
         }
     }
+
+    @Test
+    public void entriesAreSorted() throws Exception {
+        List<Relocator> relocators = Lists.<Relocator>newArrayList();
+        ServicesResourceTransformer xformer = new ServicesResourceTransformer();
+        String[] resources = { "META-INF/services/org.c", "META-INF/services/org.a", "META-INF/services/org.b" };
+        for ( String resource : resources )
+        {
+            xformer.processResource( resource, new ByteArrayInputStream( "org.foo.Service\n".getBytes( "UTF-8" ) ),
+                                     relocators );
+        }
+
+        File tempJar = File.createTempFile("shade.", ".jar");
+        tempJar.deleteOnExit();
+        JarOutputStream jos = new JarOutputStream( new FileOutputStream( tempJar ) );
+        try {
+            xformer.modifyOutputStream( jos );
+        } finally {
+            jos.close();
+        }
+        JarInputStream jis = new JarInputStream( new FileInputStream( tempJar ) );
+        try {
+            assertEquals( "META-INF/services/org.a", jis.getNextJarEntry().getName() );
+            assertEquals( "META-INF/services/org.b", jis.getNextJarEntry().getName() );
+            assertEquals( "META-INF/services/org.c", jis.getNextJarEntry().getName() );
+        } finally {
+            jis.close();
+            tempJar.delete();
+        }
+    }
 }